@@ -0,0 +1,89 @@
+package openinghoursevaluator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of BatchEvaluator on pools of 1 to 8 threads, over features made
+ * of every tag of the corpora in every one of a few countries, each repeated
+ * a few times. Every invocation starts with an empty EvaluatorFactory, so
+ * that parsing and compiling are measured too. Compare the scores of the
+ * thread counts to see how it scales, on a machine with at least as many
+ * cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+    private static final String[] CORPORA = { "timepoint", "weekday", "week", "month", "year" };
+    private static final String[] COUNTRIES = { "VN", "US", "DE", "FR", "GB", "JP", "BR", "IN", "AU", "CA" };
+    private static final int REPEATS = 4;
+
+    private static final LocalDateTime TIME = LocalDateTime.parse("2021-09-02T10:00");
+
+    @Param({ "1", "2", "4", "8" })
+    public int threads;
+
+    private List<BatchEvaluator.Feature>    features = new ArrayList<>();
+    private ForkJoinPool                    pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<String> tags = new ArrayList<>();
+        for (String corpus : CORPORA) {
+            for (String line : Files.readAllLines(Paths.get("test-data/oh/" + corpus + ".txt-oh"), StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    tags.add(line);
+                }
+            }
+        }
+        for (int repeat = 0; repeat < REPEATS; repeat++) {
+            for (String country : COUNTRIES) {
+                for (String tag : tags) {
+                    features.add(new BatchEvaluator.Feature("n" + features.size(), tag, 0, 0, country));
+                }
+            }
+        }
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Evaluate every feature, returning the evaluations so that they are
+     * consumed
+     */
+    @Benchmark
+    public List<BatchEvaluator.Evaluation> evaluate() {
+        BatchEvaluator batch = new BatchEvaluator(pool, new EvaluatorFactory(EvaluatorFactory.DEFAULT_CACHE_SIZE),
+                                                  false, BatchEvaluator.DEFAULT_CHUNK_SIZE);
+        return batch.evaluate(features, TIME);
+    }
+}
@@ -0,0 +1,69 @@
+package openinghoursevaluator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ch.poole.openinghoursparser.OpeningHoursParseException;
+import ch.poole.openinghoursparser.OpeningHoursParser;
+import ch.poole.openinghoursparser.Rule;
+
+/**
+ * The opening hours tags and input times of one of the corpora in test-data,
+ * the same ones replayed by InputTest. Corpora are roughly ordered by the
+ * complexity of their selectors, from times only to years.
+ * <p>
+ * Tags only depending on the weekday build their week once when compiled,
+ * whatever the cache size, see {@link CompiledOpeningHours#isWeekly()}, so
+ * they are kept apart from the tags that build their days on each query.
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+    @Param({ "timepoint", "weekday", "week", "month", "year", "open-next", "open-last" })
+    public String corpus;
+
+    List<String>                openingHours    = new ArrayList<>();
+    List<List<Rule>>            rules           = new ArrayList<>();
+    // compiled tags depending on the date, building days on each query
+    List<CompiledOpeningHours>  uncached        = new ArrayList<>();
+    // compiled tags only depending on the weekday, answered from their week
+    List<CompiledOpeningHours>  weekly          = new ArrayList<>();
+    List<LocalDateTime>         inputTimes      = new ArrayList<>();
+    Geolocation                 geolocation     = new Geolocation();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, OpeningHoursParseException {
+        for (String line : Files.readAllLines(Paths.get("test-data/oh/" + corpus + ".txt-oh"), StandardCharsets.UTF_8)) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            openingHours.add(line);
+            List<Rule> parsed = new OpeningHoursParser(new ByteArrayInputStream(line.getBytes())).rules(false);
+            rules.add(parsed);
+            // built days are not cached, so that each evaluation builds
+            CompiledOpeningHours compiled = new CompiledOpeningHours(parsed, geolocation, 0, 0, TimeUnit.MILLISECONDS);
+            if (compiled.isWeekly()) {
+                weekly.add(compiled);
+            } else {
+                uncached.add(compiled);
+            }
+        }
+        for (String line : Files.readAllLines(Paths.get("test-data/input-time/" + corpus + ".txt"), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                inputTimes.add(LocalDateTime.parse(line.trim()));
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package openinghoursevaluator;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.poole.openinghoursparser.OpeningHoursParseException;
+import ch.poole.openinghoursparser.Rule;
+
+/**
+ * Benchmarks of the main paths of the evaluator, each run over every tag of
+ * a corpus (and every input time of it, where relevant). Results are per
+ * whole corpus.
+ * <p>
+ * Tags only depending on the weekday are answered from the week built when
+ * compiling, so their evaluations and open next/last are measured apart,
+ * see {@link CorpusState}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluatorBenchmark {
+
+    /**
+     * Parsing of tags, through setOpeningHoursTag()
+     */
+    @Benchmark
+    public void parse(CorpusState state, Blackhole blackhole) throws OpeningHoursParseException {
+        OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator("24/7", false);
+        for (String openingHours : state.openingHours) {
+            evaluator.setOpeningHoursTag(openingHours);
+            blackhole.consume(evaluator.getCompiledOpeningHours());
+        }
+    }
+
+    /**
+     * Building the week of each input time, through MonthRule.buildWeek()
+     */
+    @Benchmark
+    public void buildWeek(CorpusState state, Blackhole blackhole) throws OpeningHoursEvaluationException {
+        for (List<Rule> rules : state.rules) {
+            for (LocalDateTime inputTime : state.inputTimes) {
+                MonthRule monthRule = new MonthRule(rules, state.geolocation);
+                monthRule.buildWeek(inputTime);
+                blackhole.consume(monthRule);
+            }
+        }
+    }
+
+    /**
+     * Evaluation of each input time, without any built day cached, for
+     * the tags depending on the date
+     */
+    @Benchmark
+    public void evaluate(CorpusState state, Blackhole blackhole) throws OpeningHoursEvaluationException {
+        for (CompiledOpeningHours compiled : state.uncached) {
+            for (LocalDateTime inputTime : state.inputTimes) {
+                blackhole.consume(compiled.evaluate(inputTime));
+            }
+        }
+    }
+
+    /**
+     * Open next of each input time, without any built day cached, for
+     * the tags depending on the date
+     */
+    @Benchmark
+    public void nextEvent(CorpusState state, Blackhole blackhole) throws OpeningHoursEvaluationException {
+        for (CompiledOpeningHours compiled : state.uncached) {
+            for (LocalDateTime inputTime : state.inputTimes) {
+                blackhole.consume(compiled.getNextEvent(inputTime));
+            }
+        }
+    }
+
+    /**
+     * Open last of each input time, without any built day cached, for
+     * the tags depending on the date
+     */
+    @Benchmark
+    public void lastEvent(CorpusState state, Blackhole blackhole) throws OpeningHoursEvaluationException {
+        for (CompiledOpeningHours compiled : state.uncached) {
+            for (LocalDateTime inputTime : state.inputTimes) {
+                blackhole.consume(compiled.getLastEvent(inputTime));
+            }
+        }
+    }
+
+    /**
+     * Evaluation of each input time, for the tags only depending on the
+     * weekday
+     */
+    @Benchmark
+    public void evaluateWeekly(CorpusState state, Blackhole blackhole) throws OpeningHoursEvaluationException {
+        for (CompiledOpeningHours compiled : state.weekly) {
+            for (LocalDateTime inputTime : state.inputTimes) {
+                blackhole.consume(compiled.evaluate(inputTime));
+            }
+        }
+    }
+
+    /**
+     * Open next of each input time, for the tags only depending on the
+     * weekday
+     */
+    @Benchmark
+    public void nextEventWeekly(CorpusState state, Blackhole blackhole) throws OpeningHoursEvaluationException {
+        for (CompiledOpeningHours compiled : state.weekly) {
+            for (LocalDateTime inputTime : state.inputTimes) {
+                blackhole.consume(compiled.getNextEvent(inputTime));
+            }
+        }
+    }
+
+    /**
+     * Open last of each input time, for the tags only depending on the
+     * weekday
+     */
+    @Benchmark
+    public void lastEventWeekly(CorpusState state, Blackhole blackhole) throws OpeningHoursEvaluationException {
+        for (CompiledOpeningHours compiled : state.weekly) {
+            for (LocalDateTime inputTime : state.inputTimes) {
+                blackhole.consume(compiled.getLastEvent(inputTime));
+            }
+        }
+    }
+}
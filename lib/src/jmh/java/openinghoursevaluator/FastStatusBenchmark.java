@@ -0,0 +1,73 @@
+package openinghoursevaluator;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.poole.openinghoursparser.OpeningHoursParseException;
+
+/**
+ * Benchmark of the steady state of checkStatusFast(), checking every 7
+ * minutes of four weeks whose days are already built. Run it with
+ * {@code -prof gc}, where gc.alloc.rate.norm should be 0 B/op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FastStatusBenchmark {
+    private static final int MINUTES = 28 * 1440;
+    private static final int STEP = 7;
+
+    private static final LocalDateTime START = LocalDateTime.parse("2021-06-07T00:00");
+
+    private CompiledOpeningHours    compiled;
+    private long                    start;
+    private int                     offset;
+
+    @Setup(Level.Trial)
+    public void setUp() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        // depending on the date, so that days come from the table of slots
+        compiled = new OpeningHoursEvaluator("Jan-Jun Mo-Fr 08:00-12:00; Sa 22:00-02:00 unknown", false)
+                        .getCompiledOpeningHours();
+        if (compiled.isWeekly()) {
+            throw new IllegalStateException("Weekly tags don't use the table of slots");
+        }
+        start = CompiledOpeningHours.toEpochMinute(START);
+        for (int i=0; i < MINUTES; i += STEP) {
+            compiled.checkStatusFast(start + i);
+        }
+    }
+
+    /**
+     * Check the status of the next time, returning it so that it is consumed
+     */
+    @Benchmark
+    public Status checkStatusFast() throws OpeningHoursEvaluationException {
+        offset = (offset + STEP) % MINUTES;
+        return compiled.checkStatusFast(start + offset);
+    }
+
+    /**
+     * Same as {@link #checkStatusFast()} through checkStatus(LocalDateTime),
+     * for comparison
+     */
+    @Benchmark
+    public Status checkStatus() throws OpeningHoursEvaluationException {
+        offset = (offset + STEP) % MINUTES;
+        return compiled.checkStatus(START.plusMinutes(offset));
+    }
+}
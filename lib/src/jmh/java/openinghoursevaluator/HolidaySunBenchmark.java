@@ -0,0 +1,100 @@
+package openinghoursevaluator;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.poole.openinghoursparser.OpeningHoursParseException;
+
+/**
+ * Benchmarks of the holiday and variable time paths, evaluating noon of
+ * every day of a year without any built day cached
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HolidaySunBenchmark {
+    private static final LocalDateTime START = LocalDateTime.parse("2021-01-01T12:00");
+
+    // true to keep the times of sun events in the shared cache
+    @Param({ "true", "false" })
+    public boolean sunCached;
+
+    private CompiledOpeningHours    holiday;
+    private CompiledOpeningHours    subRegionHoliday;
+    private CompiledOpeningHours    sun;
+    private SunEventCache           previousSunCache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws OpeningHoursParseException {
+        holiday = uncached("Mo-Fr 08:00-17:00; PH off; SH 08:00-12:00", new Geolocation());
+        subRegionHoliday = uncached("Mo-Fr 08:00-17:00; PH off",
+                                    new Geolocation(40.7128, -74.0060, "US", "NY"));
+        sun = uncached("sunrise-sunset; Sa dawn-dusk", new Geolocation());
+        previousSunCache = SunEventCache.getDefault();
+        SunEventCache.setDefault(new SunEventCache((sunCached) ? SunEventCache.DEFAULT_CACHE_SIZE : 0,
+                                                   SunEventCache.DEFAULT_QUANTIZATION));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SunEventCache.setDefault(previousSunCache);
+    }
+
+    /** Helper for setUp(), compile a tag with no cache of built days */
+    private static CompiledOpeningHours uncached(String openingHours, Geolocation geolocation)
+            throws OpeningHoursParseException {
+        OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator(openingHours, false, geolocation);
+        evaluator.setCacheOptions(0, 0, TimeUnit.MILLISECONDS);
+        return evaluator.getCompiledOpeningHours();
+    }
+
+    /** Helper for benchmarks, evaluate noon of every day of a year */
+    private static void evaluateYear(CompiledOpeningHours compiled, Blackhole blackhole)
+            throws OpeningHoursEvaluationException {
+        for (LocalDateTime time = START; time.getYear() == START.getYear(); time = time.plusDays(1)) {
+            blackhole.consume(compiled.evaluate(time));
+        }
+    }
+
+    /**
+     * Public and school holidays of a country
+     */
+    @Benchmark
+    public void holiday(Blackhole blackhole) throws OpeningHoursEvaluationException {
+        evaluateYear(holiday, blackhole);
+    }
+
+    /**
+     * Public holidays of a country and one of its sub regions
+     */
+    @Benchmark
+    public void subRegionHoliday(Blackhole blackhole) throws OpeningHoursEvaluationException {
+        evaluateYear(subRegionHoliday, blackhole);
+    }
+
+    /**
+     * Variable times, sunrise and sunset as well as dawn and dusk
+     */
+    @Benchmark
+    public void sunTimes(Blackhole blackhole) throws OpeningHoursEvaluationException {
+        evaluateYear(sun, blackhole);
+    }
+}
@@ -0,0 +1,501 @@
+package openinghoursevaluator;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.poole.openinghoursparser.OpeningHoursParseException;
+
+/**
+ * An evaluator of many features at once, for example every OSM feature with
+ * an opening hours tag, at the same time.
+ * <p>
+ * Features are read in chunks of {@link #DEFAULT_CHUNK_SIZE}. In a chunk,
+ * features are grouped by opening hours tag, country and sub region, and
+ * each group is compiled through an {@link EvaluatorFactory} and evaluated
+ * only once, since they all share the same answer. Only when the tag uses
+ * variable times (sunrise, dusk, ...) are the coordinates part of the group.
+ * Groups are evaluated in parallel on a {@link ForkJoinPool}, then the
+ * answers are given back in the same order as the features.
+ * <p>
+ * The time is the local time at every feature, as everywhere else in this
+ * evaluator, so timezones are only looked up for variable times.
+ * <p>
+ * This class is thread-safe.
+ */
+public class BatchEvaluator {
+    // default number of features evaluated in parallel
+    public static final int DEFAULT_CHUNK_SIZE = 65536;
+
+    private final ForkJoinPool      pool;
+    private final EvaluatorFactory  factory;
+    private final boolean           isStrict;
+    private final int               chunkSize;
+
+    /**
+     * Default constructor, with non-strict parsing on the common ForkJoinPool
+     * and the default EvaluatorFactory
+     */
+    public BatchEvaluator() {
+        this(ForkJoinPool.commonPool(), EvaluatorFactory.getDefault(), false, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor for a BatchEvaluator
+     *
+     * @param pool the ForkJoinPool evaluating the groups of features
+     * @param factory the EvaluatorFactory compiling the opening hours tags
+     * @param isStrict parsing mode, true to turn on strict
+     * @param chunkSize maximum number of features evaluated at once
+     */
+    public BatchEvaluator(@Nonnull ForkJoinPool pool, @Nonnull EvaluatorFactory factory, boolean isStrict,
+                          int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.pool = pool;
+        this.factory = factory;
+        this.isStrict = isStrict;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Evaluate a list of features at a time
+     *
+     * @param features the features to be evaluated
+     * @param time local time to evaluate at
+     * @return the Evaluations of the features, in the same order
+     */
+    public List<Evaluation> evaluate(@Nonnull List<Feature> features, @Nonnull LocalDateTime time) {
+        return evaluate(features, time, false);
+    }
+
+    /**
+     * Evaluate a list of features at a time, optionally with the next event
+     * after that time
+     *
+     * @param features the features to be evaluated
+     * @param time local time to evaluate at
+     * @param withNextEvent true to also get the next event of every feature,
+     *      see {@link Evaluation#getNextEvent()}
+     * @return the Evaluations of the features, in the same order
+     */
+    public List<Evaluation> evaluate(@Nonnull List<Feature> features, @Nonnull LocalDateTime time,
+                                     boolean withNextEvent) {
+        List<Evaluation> result = new ArrayList<>(features.size());
+        for (int from = 0; from < features.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, features.size());
+            Collections.addAll(result, evaluateChunk(features.subList(from, to), time, withNextEvent));
+        }
+        return result;
+    }
+
+    /**
+     * Evaluate a stream of features at a time. The returned stream is lazy,
+     * a chunk of features is only read and evaluated when the previous one
+     * has been consumed, so that any number of features can be evaluated with
+     * bounded memory.
+     *
+     * @param features the features to be evaluated
+     * @param time local time to evaluate at
+     * @return a sequential, ordered stream of the Evaluations of the features
+     */
+    public Stream<Evaluation> evaluate(@Nonnull Stream<Feature> features, @Nonnull LocalDateTime time) {
+        Iterator<Feature> input = features.iterator();
+        Iterator<Evaluation> output = new Iterator<Evaluation>() {
+            Evaluation[]    chunk   = new Evaluation[0];
+            int             next    = 0;
+
+            @Override
+            public boolean hasNext() {
+                if (next == chunk.length && input.hasNext()) {
+                    List<Feature> read = new ArrayList<>(chunkSize);
+                    while (read.size() < chunkSize && input.hasNext()) {
+                        read.add(input.next());
+                    }
+                    chunk = evaluateChunk(read, time, false);
+                    next = 0;
+                }
+                return next < chunk.length;
+            }
+
+            @Override
+            public Evaluation next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Evaluation evaluation = chunk[next];
+                chunk[next++] = null;
+                return evaluation;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(output,
+                                        Spliterator.ORDERED | Spliterator.NONNULL), false)
+                            .onClose(features::close);
+    }
+
+    /**
+     * Evaluate a stream of features at a time, giving the Evaluations to a
+     * callback in the same order as the features
+     *
+     * @param features the features to be evaluated
+     * @param time local time to evaluate at
+     * @param callback called with the Evaluation of each feature, from the
+     *      calling thread
+     */
+    public void evaluate(@Nonnull Stream<Feature> features, @Nonnull LocalDateTime time,
+                         @Nonnull Consumer<Evaluation> callback) {
+        evaluate(features, time).forEachOrdered(callback);
+    }
+
+    /**
+     * Evaluate a chunk of features, grouping them then evaluating the groups
+     * in parallel
+     */
+    private Evaluation[] evaluateChunk(List<Feature> features, LocalDateTime time, boolean withNextEvent) {
+        Map<GroupKey, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i=0; i < features.size(); i++) {
+            Feature feature = features.get(i);
+            groups.computeIfAbsent(new GroupKey(feature), k -> new ArrayList<>()).add(i);
+        }
+        Evaluation[] result = new Evaluation[features.size()];
+        List<List<Integer>> members = new ArrayList<>(groups.values());
+        pool.invoke(new GroupTask(features, members, 0, members.size(), time, withNextEvent, result));
+        return result;
+    }
+
+    /**
+     * Evaluate a group of features sharing the same opening hours tag, country
+     * and sub region
+     */
+    private void evaluateGroup(List<Feature> features, List<Integer> members, LocalDateTime time,
+                               boolean withNextEvent, Evaluation[] result) {
+        Feature first = features.get(members.get(0));
+        CompiledOpeningHours compiled;
+        try {
+            compiled = factory.get(first.openingHours, isStrict, first.toGeolocation(false));
+        } catch (OpeningHoursParseException | RuntimeException e) {
+            for (int i : members) {
+                result[i] = new Evaluation(features.get(i), null, null, e);
+            }
+            return;
+        }
+        if (!compiled.hasVariableTimes()) {
+            Evaluation shared = evaluate(compiled, first, time, withNextEvent);
+            for (int i : members) {
+                result[i] = new Evaluation(features.get(i), shared.result, shared.nextEvent, shared.error);
+            }
+            return;
+        }
+        // only the features at the same place share their answer
+        Map<Geolocation, Evaluation> places = new HashMap<>();
+        for (int i : members) {
+            Feature feature = features.get(i);
+            Evaluation evaluation;
+            try {
+                if (Double.isNaN(feature.lat) || Double.isNaN(feature.lng)) {
+                    result[i] = new Evaluation(feature, null, null, new OpeningHoursEvaluationException(
+                                                   "Missing coordinates, needed for variable times"));
+                    continue;
+                }
+                Geolocation geolocation = feature.toGeolocation(true);
+                evaluation = places.get(geolocation);
+                if (evaluation == null) {
+                    // kept by the factory for the place, with its sun events
+                    evaluation = evaluate(factory.get(feature.openingHours, isStrict, geolocation),
+                                          feature, time, withNextEvent);
+                    places.put(geolocation, evaluation);
+                }
+            } catch (OpeningHoursParseException | RuntimeException e) {
+                evaluation = new Evaluation(feature, null, null, e);
+            }
+            result[i] = new Evaluation(feature, evaluation.result, evaluation.nextEvent, evaluation.error);
+        }
+    }
+
+    /** Helper for evaluateGroup(), evaluate a feature on its compiled form */
+    private static Evaluation evaluate(CompiledOpeningHours compiled, Feature feature, LocalDateTime time,
+                                       boolean withNextEvent) {
+        try {
+            Result nextEvent = (withNextEvent) ? compiled.getNextEvent(time) : null;
+            return new Evaluation(feature, compiled.evaluate(time), nextEvent, null);
+        } catch (OpeningHoursEvaluationException | RuntimeException e) {
+            return new Evaluation(feature, null, null, e);
+        }
+    }
+
+    /**
+     * Task evaluating a range of groups, split in halves until there are few
+     * enough groups to be evaluated by one thread
+     */
+    private class GroupTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 16;
+
+        private final List<Feature>       features;
+        private final List<List<Integer>> members;
+        private final int                           from;
+        private final int                           to;
+        private final LocalDateTime                 time;
+        private final boolean                       withNextEvent;
+        private final Evaluation[]                  result;
+
+        GroupTask(List<Feature> features, List<List<Integer>> members, int from, int to,
+                  LocalDateTime time, boolean withNextEvent, Evaluation[] result) {
+            this.features = features;
+            this.members = members;
+            this.from = from;
+            this.to = to;
+            this.time = time;
+            this.withNextEvent = withNextEvent;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int group = from; group < to; group++) {
+                    evaluateGroup(features, members.get(group), time, withNextEvent, result);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new GroupTask(features, members, from, middle, time, withNextEvent, result),
+                      new GroupTask(features, members, middle, to, time, withNextEvent, result));
+        }
+    }
+
+    /**
+     * Key of a group of features which share the same answer, unless their
+     * tag uses variable times
+     */
+    private static class GroupKey {
+        final String    openingHours;
+        final String    country;
+        final String    subRegion;
+        final int       hash;
+
+        GroupKey(Feature feature) {
+            this.openingHours = feature.openingHours;
+            this.country = feature.country;
+            this.subRegion = feature.subRegion;
+            this.hash = Objects.hash(openingHours, country, subRegion);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof GroupKey)) {
+                return false;
+            }
+            GroupKey o = (GroupKey) other;
+            return openingHours.equals(o.openingHours)
+                && Objects.equals(country, o.country)
+                && Objects.equals(subRegion, o.subRegion);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A feature to be evaluated, with an opening hours tag and where it is
+     */
+    public static class Feature {
+        final String    id;
+        final String    openingHours;
+        final double    lat;
+        final double    lng;
+        final String    country;
+        final String    subRegion;
+
+        /**
+         * Constructor for a Feature
+         *
+         * @param id an identifier of the feature, e.g. "n123456"
+         * @param openingHours its opening hours tag
+         * @param lat latitude, NaN if unknown
+         * @param lng longitude, NaN if unknown
+         * @param country ISO 3166 2-letter country code (e.g. "VN"), null
+         *      for the default geolocation
+         */
+        public Feature(@Nonnull String id, @Nonnull String openingHours, double lat, double lng,
+                       @Nullable String country) {
+            this(id, openingHours, lat, lng, country, null);
+        }
+
+        /**
+         * Constructor for a Feature in a sub region of a country. Unknown
+         * coordinates are only an error for tags with variable times, which
+         * depend on them.
+         *
+         * @param id an identifier of the feature, e.g. "n123456"
+         * @param openingHours its opening hours tag
+         * @param lat latitude, NaN if unknown
+         * @param lng longitude, NaN if unknown
+         * @param country ISO 3166 2-letter country code (e.g. "VN"), null
+         *      for the default geolocation
+         * @param subRegion a subregion shortened name, see
+         *      {@link Geolocation#setSubRegion(String)}
+         */
+        public Feature(@Nonnull String id, @Nonnull String openingHours, double lat, double lng,
+                       @Nullable String country, @Nullable String subRegion) {
+            this.id = id;
+            this.openingHours = openingHours;
+            this.lat = lat;
+            this.lng = lng;
+            this.country = country;
+            this.subRegion = subRegion;
+        }
+
+        /**
+         * Get the geolocation of this feature
+         *
+         * @param withCoordinates true to set the coordinates and look up the
+         *      timezone, false for only the country and sub region
+         * @return a new Geolocation
+         */
+        Geolocation toGeolocation(boolean withCoordinates) {
+            Geolocation geolocation = new Geolocation();
+            if (withCoordinates) {
+                geolocation.setCoordinate(lat, lng);
+                geolocation.refreshTimeZone();
+            }
+            if (country != null) {
+                geolocation.setCountry(country);
+            }
+            geolocation.setSubRegion(subRegion);
+            return geolocation;
+        }
+
+        /**
+         * @return the identifier of this feature
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return the opening hours tag of this feature
+         */
+        public String getOpeningHours() {
+            return openingHours;
+        }
+
+        /**
+         * @return the latitude of this feature
+         */
+        public double getLatitude() {
+            return lat;
+        }
+
+        /**
+         * @return the longitude of this feature
+         */
+        public double getLongitude() {
+            return lng;
+        }
+
+        /**
+         * @return the country code of this feature, null if none
+         */
+        @Nullable
+        public String getCountry() {
+            return country;
+        }
+
+        /**
+         * @return the sub region of this feature, null if none
+         */
+        @Nullable
+        public String getSubRegion() {
+            return subRegion;
+        }
+    }
+
+    /**
+     * The answer for a Feature, either a Result or the exception thrown when
+     * parsing or evaluating its opening hours tag.
+     * <p>
+     * Features of the same group share the same Result instances, which must
+     * then not be modified.
+     */
+    public static class Evaluation {
+        final Feature   feature;
+        final Result    result;
+        final Result    nextEvent;
+        final Exception error;
+
+        /**
+         * Constructor for an Evaluation
+         *
+         * @param feature the evaluated Feature
+         * @param result its Result, null if there was an error
+         * @param nextEvent its next event, null if not asked for or if there
+         *      was an error
+         * @param error the error, null if there was none
+         */
+        Evaluation(@Nonnull Feature feature, @Nullable Result result, @Nullable Result nextEvent,
+                   @Nullable Exception error) {
+            this.feature = feature;
+            this.result = result;
+            this.nextEvent = nextEvent;
+            this.error = error;
+        }
+
+        /**
+         * @return the evaluated Feature
+         */
+        public Feature getFeature() {
+            return feature;
+        }
+
+        /**
+         * @return the Result of the Feature, null if there was an error
+         */
+        @Nullable
+        public Result getResult() {
+            return result;
+        }
+
+        /**
+         * @return the next event of the Feature as given by
+         *      {@link CompiledOpeningHours#getNextEvent(LocalDateTime)}, null
+         *      if it was not asked for or if there was an error
+         */
+        @Nullable
+        public Result getNextEvent() {
+            return nextEvent;
+        }
+
+        /**
+         * @return the exception thrown when parsing or evaluating the opening
+         *      hours tag of the Feature, null if there was none
+         */
+        @Nullable
+        public Exception getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package openinghoursevaluator;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A columnar container of the results of many evaluations, for example of a
+ * {@link BatchEvaluator}, taking about 21 bytes per result instead of a
+ * {@link Result} object with its own list of warnings.
+ * <p>
+ * Statuses are stored as one byte per result, next and last event times as
+ * longs of epoch minutes (see {@link CompiledOpeningHours#toEpochMinute}),
+ * and comments and error messages as ints indexing a table of distinct
+ * strings. Columns are kept in little endian ByteBuffers laid out exactly as
+ * in the binary file, so that {@link #write(Path)} hands them to the channel
+ * as they are and {@link #read(Path)} uses slices of the mapped file without
+ * copying.
+ * <p>
+ * The binary file is made of a header (magic "OHBR", version, number of
+ * results and of strings, 4 bytes each), the status column padded to 8 bytes,
+ * the next and the last event columns, the string index column, then the
+ * strings, each as its length in bytes followed by its UTF-8 bytes.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class BatchResults {
+    // "OHBR" in ASCII
+    public static final int     MAGIC           = 0x5242484F;
+    public static final int     VERSION         = 1;
+    // event time of a result without that event
+    public static final long    NO_TIME         = Long.MIN_VALUE;
+
+    private static final int    HEADER_SIZE     = 16;
+    private static final int    NO_STRING       = -1;
+    private static final int    INITIAL_CAPACITY = 16;
+
+    // status codes, the ordinal of a Status or ERROR
+    private static final byte   ERROR           = -1;
+    private static final Status[] STATUSES      = Status.values();
+
+    private int         size        = 0;
+    private ByteBuffer  statuses;
+    private ByteBuffer  nextEvents;
+    private ByteBuffer  lastEvents;
+    private ByteBuffer  stringIds;
+
+    // table of distinct comments and error messages
+    private final List<String>          strings     = new ArrayList<>();
+    private final Map<String, Integer>  stringIndex = new HashMap<>();
+
+    /**
+     * Default constructor, for an empty BatchResults
+     */
+    public BatchResults() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor for an empty BatchResults with room for a number of results
+     *
+     * @param capacity initial number of results
+     */
+    public BatchResults(int capacity) {
+        allocate(Math.max(capacity, 1));
+    }
+
+    /**
+     * Add the Result of an evaluation
+     *
+     * @param status the Status
+     * @param comment an optional comment
+     * @param nextEvent time of the next event, null if none
+     * @param lastEvent time of the last event, null if none
+     */
+    public void add(@Nonnull Status status, @Nullable String comment, @Nullable LocalDateTime nextEvent,
+                    @Nullable LocalDateTime lastEvent) {
+        add((byte) status.ordinal(), comment, toMinute(nextEvent), toMinute(lastEvent));
+    }
+
+    /**
+     * Add an error, instead of the Result of an evaluation
+     *
+     * @param message the message of the error
+     */
+    public void addError(@Nullable String message) {
+        add(ERROR, (message == null) ? "" : message, NO_TIME, NO_TIME);
+    }
+
+    /**
+     * Add an Evaluation of a {@link BatchEvaluator}, with its next event if
+     * it was asked for
+     *
+     * @param evaluation an Evaluation
+     */
+    public void add(@Nonnull BatchEvaluator.Evaluation evaluation) {
+        Result result = evaluation.getResult();
+        if (result == null) {
+            addError(evaluation.getError().getMessage());
+            return;
+        }
+        Result nextEvent = evaluation.getNextEvent();
+        LocalDateTime nextTime = (nextEvent == null || nextEvent.isAlways()) ? null : nextEvent.getNextEventTime();
+        add(result.getStatus(), result.getComment(), nextTime, null);
+    }
+
+    /** Helper for the add methods, add a row of codes */
+    private void add(byte status, @Nullable String string, long nextEvent, long lastEvent) {
+        if (size == statuses.capacity()) {
+            allocate(Math.max(size * 2, INITIAL_CAPACITY));
+        }
+        statuses.put(size, status);
+        nextEvents.putLong(size * Long.BYTES, nextEvent);
+        lastEvents.putLong(size * Long.BYTES, lastEvent);
+        stringIds.putInt(size * Integer.BYTES, intern(string));
+        size++;
+    }
+
+    /** Helper for add(), get the index of a string in the table */
+    private int intern(@Nullable String string) {
+        if (string == null) {
+            return NO_STRING;
+        }
+        Integer index = stringIndex.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringIndex.put(string, index);
+        }
+        return index;
+    }
+
+    /**
+     * Replace the columns with larger ones, copying the results so far
+     */
+    private void allocate(int capacity) {
+        statuses = grow(statuses, capacity, 1);
+        nextEvents = grow(nextEvents, capacity, Long.BYTES);
+        lastEvents = grow(lastEvents, capacity, Long.BYTES);
+        stringIds = grow(stringIds, capacity, Integer.BYTES);
+    }
+
+    /** Helper for allocate(), copy a column into a larger one */
+    private ByteBuffer grow(@Nullable ByteBuffer column, int capacity, int width) {
+        ByteBuffer grown = ByteBuffer.allocate(capacity * width).order(ByteOrder.LITTLE_ENDIAN);
+        if (column != null) {
+            grown.put(used(column, width));
+            // called on Buffer, since the overrides of ByteBuffer are missing on Java 8
+            ((Buffer) grown).clear();
+        }
+        return grown;
+    }
+
+    /**
+     * @return the number of results
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index index of a result
+     * @return true if the result is an error
+     */
+    public boolean isError(int index) {
+        return statusCode(index) == ERROR;
+    }
+
+    /**
+     * @param index index of a result
+     * @return the Status of the result, null if it is an error
+     */
+    @Nullable
+    public Status getStatus(int index) {
+        byte code = statusCode(index);
+        return (code == ERROR) ? null : STATUSES[code];
+    }
+
+    /**
+     * @param index index of a result
+     * @return the comment of the result, null if none or if it is an error
+     */
+    @Nullable
+    public String getComment(int index) {
+        return isError(index) ? null : getString(index);
+    }
+
+    /**
+     * @param index index of a result
+     * @return the message of the error, null if the result is not an error
+     */
+    @Nullable
+    public String getError(int index) {
+        return isError(index) ? getString(index) : null;
+    }
+
+    /**
+     * @param index index of a result
+     * @return time of the next event in epoch minutes, {@link #NO_TIME} if
+     *      none
+     */
+    public long getNextEventMinute(int index) {
+        checkIndex(index);
+        return nextEvents.getLong(index * Long.BYTES);
+    }
+
+    /**
+     * @param index index of a result
+     * @return time of the last event in epoch minutes, {@link #NO_TIME} if
+     *      none
+     */
+    public long getLastEventMinute(int index) {
+        checkIndex(index);
+        return lastEvents.getLong(index * Long.BYTES);
+    }
+
+    /**
+     * @param index index of a result
+     * @return time of the next event, null if none
+     */
+    @Nullable
+    public LocalDateTime getNextEvent(int index) {
+        return toTime(getNextEventMinute(index));
+    }
+
+    /**
+     * @param index index of a result
+     * @return time of the last event, null if none
+     */
+    @Nullable
+    public LocalDateTime getLastEvent(int index) {
+        return toTime(getLastEventMinute(index));
+    }
+
+    /**
+     * @return the number of distinct comments and error messages
+     */
+    public int getStringCount() {
+        return strings.size();
+    }
+
+    /** Helper for the getters, get the status code of a result */
+    private byte statusCode(int index) {
+        checkIndex(index);
+        return statuses.get(index);
+    }
+
+    /** Helper for the getters, get the comment or error message of a result */
+    @Nullable
+    private String getString(int index) {
+        int id = stringIds.getInt(index * Integer.BYTES);
+        return (id == NO_STRING) ? null : strings.get(id);
+    }
+
+    /** Helper for the getters, check an index */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + size + " results");
+        }
+    }
+
+    /** Convert a time to epoch minutes, null to NO_TIME */
+    private static long toMinute(@Nullable LocalDateTime time) {
+        return (time == null) ? NO_TIME : CompiledOpeningHours.toEpochMinute(time);
+    }
+
+    /** Convert epoch minutes to a time, NO_TIME to null */
+    @Nullable
+    private static LocalDateTime toTime(long epochMinute) {
+        return (epochMinute == NO_TIME) ? null : LocalDateTime.of(1970, 1, 1, 0, 0).plusMinutes(epochMinute);
+    }
+
+    /**
+     * Write these results to a binary file, replacing it if it exists. The
+     * columns are written as they are kept, without copying.
+     *
+     * @param path path of the file
+     * @throws IOException if the file can't be written
+     */
+    public void write(@Nonnull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(channel);
+        }
+    }
+
+    /**
+     * Write these results to a channel, see the format above
+     *
+     * @param channel the channel, left open
+     * @throws IOException if the channel can't be written
+     */
+    public void write(@Nonnull GatheringByteChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(strings.size());
+        ((Buffer) header).flip();
+        List<byte[]> encoded = new ArrayList<>(strings.size());
+        int stringBytes = 0;
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            stringBytes += Integer.BYTES + bytes.length;
+        }
+        ByteBuffer table = ByteBuffer.allocate(stringBytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (byte[] bytes : encoded) {
+            table.putInt(bytes.length).put(bytes);
+        }
+        ((Buffer) table).flip();
+        ByteBuffer[] buffers = { header,
+                                 used(statuses, 1),
+                                 ByteBuffer.allocate(padding(size)),
+                                 used(nextEvents, Long.BYTES),
+                                 used(lastEvents, Long.BYTES),
+                                 used(stringIds, Integer.BYTES),
+                                 table };
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    /** Helper for write(), get a view of the used part of a column */
+    private ByteBuffer used(ByteBuffer column, int width) {
+        ByteBuffer used = column.duplicate();
+        ((Buffer) used).position(0).limit(size * width);
+        return used;
+    }
+
+    /** Get the number of bytes padding the status column to 8 bytes */
+    private static int padding(int size) {
+        return (Long.BYTES - size % Long.BYTES) % Long.BYTES;
+    }
+
+    /**
+     * Read results from a binary file written by {@link #write(Path)}. The file
+     * is memory mapped and the columns are read in place, only the strings are
+     * decoded. Adding to the returned results copies the columns first.
+     *
+     * @param path path of the file
+     * @return the results
+     * @throws IOException if the file can't be read or is not in this format
+     */
+    public static BatchResults read(@Nonnull Path path) throws IOException {
+        ByteBuffer file;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (file.remaining() < HEADER_SIZE || file.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a file of batch results");
+        }
+        if (file.getInt(4) != VERSION) {
+            throw new IOException("Unsupported version " + file.getInt(4) + " of batch results in " + path);
+        }
+        int size = file.getInt(8);
+        int stringCount = file.getInt(12);
+        if (size < 0 || stringCount < 0
+                || HEADER_SIZE + (long) size * (1 + 2 * Long.BYTES + Integer.BYTES) > file.limit()) {
+            throw new IOException("Truncated batch results in " + path);
+        }
+        BatchResults results = new BatchResults();
+        results.size = size;
+        int position = HEADER_SIZE;
+        results.statuses = slice(file, position, size);
+        position += size + padding(size);
+        results.nextEvents = slice(file, position, size * Long.BYTES);
+        position += size * Long.BYTES;
+        results.lastEvents = slice(file, position, size * Long.BYTES);
+        position += size * Long.BYTES;
+        results.stringIds = slice(file, position, size * Integer.BYTES);
+        position += size * Integer.BYTES;
+        for (int i=0; i < stringCount; i++) {
+            int length = file.getInt(position);
+            byte[] bytes = new byte[length];
+            ByteBuffer string = file.duplicate();
+            ((Buffer) string).position(position + Integer.BYTES);
+            string.get(bytes);
+            results.intern(new String(bytes, StandardCharsets.UTF_8));
+            position += Integer.BYTES + length;
+        }
+        return results;
+    }
+
+    /** Helper for read(), get a column of the mapped file */
+    private static ByteBuffer slice(ByteBuffer file, int position, int length) {
+        ByteBuffer column = file.duplicate();
+        ((Buffer) column).position(position).limit(position + length);
+        return column.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,686 @@
+package openinghoursevaluator;
+
+import java.io.ByteArrayInputStream;
+import java.time.LocalDate;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.poole.openinghoursparser.OpeningHoursParseException;
+import ch.poole.openinghoursparser.OpeningHoursParser;
+import ch.poole.openinghoursparser.Rule;
+import ch.poole.openinghoursparser.TimeSpan;
+
+/**
+ * An immutable, compiled form of a list of {@link Rule} and a
+ * {@link Geolocation}, meant to be created once per opening hours tag and
+ * reused for many evaluations.
+ * <p>
+ * Built days and weeks are kept as immutable {@link DaySchedule} in bounded
+ * {@link LruCache}, so repeated queries on the same day or week do not go
+ * through {@link MonthRule} again. Since the geolocation is fixed for an
+ * instance, the caches are keyed by date only.
+ * <p>
+ * Most tags only depend on the weekday, having no year, week, date, holiday
+ * or variable time selectors. For those, one week is built when compiling,
+ * and every evaluation and open next/last is then a lookup into these 7 days,
+ * without going through MonthRule or the caches at all.
+ * <p>
+ * Tags depending on the date, such as seasonal ones, keep their built weeks in
+ * a {@link YearTable} instead of the cache of built weeks, as IDs of a few
+ * distinct days, so that travelling through many weeks for open next/last or
+ * a timeline builds each week at most once while the instance is used.
+ * <p>
+ * Instances of this class are thread-safe, and can be shared by any number of
+ * threads, for example one instance per distinct tag in a server. All fields
+ * but the volatile table of {@link #checkStatusFast(long)} are final, and the
+ * Rules and geolocation are private copies, so an instance is safely published
+ * even through a data race. See {@link #builder()}.
+ */
+public final class CompiledOpeningHours {
+    // default number of built days kept, a bit more than a year
+    public static final int DEFAULT_CACHE_SIZE = 400;
+    // number of built days kept for checkStatusFast(), a power of two
+    public static final int FAST_TABLE_SIZE = 512;
+
+    private static final long MINUTES_PER_DAY = 1440;
+    // a Monday, whose week is built for Rules only depending on the weekday
+    private static final LocalDate WEEKLY_REFERENCE = LocalDate.of(2001, 1, 1);
+
+    private final List<Rule>    rules;
+    private final List<RulePlan> plans;
+    private final Geolocation   geolocation;
+    private final RuleIndex     ruleIndex;
+    private final RuleBoundaries ruleBoundaries;
+    // true if a Rule has variable times, the only use of the coordinates
+    // and timezone of the geolocation
+    private final boolean       variableTimes;
+
+    // when the Rules only depend on the weekday, the days of every week from
+    // Monday and their bitmaps, null otherwise
+    private final List<DaySchedule> weeklySchedule;
+    private final DayBitmap[]       weeklyBitmaps;
+    // when the Rules depend on the date but not on variable times or on week
+    // numbers of a week not starting on Monday, and built days never expire,
+    // the built days of whole years, null otherwise
+    private final YearTable         yearTable;
+
+    // built days, keyed by date, and built weeks, keyed by their Monday
+    private final LruCache<LocalDate, DaySchedule>          dayCache;
+    private final LruCache<LocalDate, List<DaySchedule>>    weekCache;
+
+    // built days used by checkStatusFast(), indexed by epoch day modulo the
+    // table size, allocated on first use by a tag depending on the date.
+    // Slots are immutable, so racing writers at worst build a day twice.
+    private volatile DaySlot[]  fastTable = null;
+    private final long          ttlNanos;
+
+    /**
+     * Constructor for a CompiledOpeningHours with a list of Rules and a
+     * geolocation, using a cache of {@link #DEFAULT_CACHE_SIZE} days without
+     * expiry. Both inputs are copied, so later changes to them do not affect
+     * this instance.
+     *
+     * @param rules the list of Rules
+     * @param geolocation the geolocation
+     */
+    public CompiledOpeningHours(List<Rule> rules, @Nonnull Geolocation geolocation) {
+        this(rules, geolocation, DEFAULT_CACHE_SIZE, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructor for a CompiledOpeningHours with a list of Rules, a
+     * geolocation and options for the cache of built days. Both inputs are
+     * copied, so later changes to them do not affect this instance.
+     *
+     * @param rules the list of Rules
+     * @param geolocation the geolocation
+     * @param cacheSize maximum number of built days kept, 0 to disable caching
+     * @param ttl time after which a built day is rebuilt, 0 for never
+     * @param unit the unit of ttl
+     */
+    public CompiledOpeningHours(List<Rule> rules, @Nonnull Geolocation geolocation,
+                                int cacheSize, long ttl, TimeUnit unit) {
+        this(copyOf(rules), new Geolocation(geolocation), cacheSize, ttl, unit, null);
+    }
+
+    /**
+     * Constructor for a CompiledOpeningHours taking ownership of its inputs,
+     * with an optional week built beforehand, see {@link #restore}
+     */
+    private CompiledOpeningHours(List<Rule> rules, Geolocation geolocation, int cacheSize, long ttl,
+                                 TimeUnit unit, @Nullable List<DaySchedule> prebuiltWeek) {
+        this.rules = Collections.unmodifiableList(rules);
+        this.plans = RulePlan.of(this.rules);
+        this.geolocation = geolocation;
+        this.ruleIndex = new RuleIndex(this.rules, this.geolocation);
+        this.ruleBoundaries = new RuleBoundaries(this.rules, this.geolocation);
+        this.variableTimes = hasVariableTimes(this.rules);
+        this.dayCache = new LruCache<>(cacheSize, ttl, unit);
+        this.ttlNanos = unit.toNanos(ttl);
+        // weeks are cached with the same number of days in total
+        this.weekCache = new LruCache<>((cacheSize + 6) / 7, ttl, unit);
+        if (!ruleBoundaries.isWeekly()) {
+            this.weeklySchedule = null;
+        } else if (prebuiltWeek != null) {
+            this.weeklySchedule = Collections.unmodifiableList(new ArrayList<>(prebuiltWeek));
+        } else {
+            this.weeklySchedule = buildWeeklySchedule();
+        }
+        if (weeklySchedule != null) {
+            weeklyBitmaps = new DayBitmap[weeklySchedule.size()];
+            for (int i=0; i < weeklyBitmaps.length; i++) {
+                weeklyBitmaps[i] = new DayBitmap(weeklySchedule.get(i));
+            }
+        } else {
+            weeklyBitmaps = null;
+        }
+        this.yearTable = (weeklySchedule == null && cacheSize > 0 && ttl == 0
+                          && YearTable.isApplicable(this.rules, this.geolocation.getLocale()))
+            ? new YearTable(this.rules)
+            : null;
+    }
+
+    /**
+     * Restore a CompiledOpeningHours from its parts, as read by
+     * {@link CompiledSchedules}. The inputs are owned by the new instance and
+     * must not be changed afterwards.
+     *
+     * @param rules freshly parsed Rules
+     * @param geolocation the geolocation
+     * @param weeklySchedule the 7 DaySchedule from Monday built when the
+     *      Rules were compiled, if they only depend on the weekday, null to
+     *      build the week again
+     * @return a new CompiledOpeningHours, with the default cache options
+     */
+    static CompiledOpeningHours restore(List<Rule> rules, Geolocation geolocation,
+                                        @Nullable List<DaySchedule> weeklySchedule) {
+        return new CompiledOpeningHours(rules, geolocation, DEFAULT_CACHE_SIZE, 0, TimeUnit.MILLISECONDS,
+                                        weeklySchedule);
+    }
+
+    /** Helper for the constructor, check if any Rule has variable times */
+    private static boolean hasVariableTimes(List<Rule> rules) {
+        for (Rule rule : rules) {
+            if (rule.getTimes() != null) {
+                for (TimeSpan timespan : rule.getTimes()) {
+                    if (timespan.getStartEvent() != null || timespan.getEndEvent() != null) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Helper for the constructor, copy Rules so that later changes cannot leak in */
+    private static List<Rule> copyOf(List<Rule> rules) {
+        List<Rule> rulesCopy = new ArrayList<>();
+        for (Rule rule : rules) {
+            rulesCopy.add(rule.copy());
+        }
+        return rulesCopy;
+    }
+
+    /**
+     * Helper for the constructor, build the week shared by every date when the
+     * Rules only depend on the weekday
+     *
+     * @return 7 DaySchedule from Monday, null if building failed, in which
+     *      case evaluations report it
+     */
+    @Nullable
+    private List<DaySchedule> buildWeeklySchedule() {
+        try {
+            MonthRule monthRule = new MonthRule(rules, plans, geolocation);
+            monthRule.buildWeek(WEEKLY_REFERENCE.atStartOfDay());
+            return Collections.unmodifiableList(Arrays.asList(monthRule.snapshotWeek()));
+        } catch (OpeningHoursEvaluationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return a new Builder of CompiledOpeningHours
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return a copy of the list of Rules compiled in this instance
+     */
+    public List<Rule> getRules() {
+        List<Rule> rulesList = new ArrayList<>();
+        for (Rule rule : rules) {
+            rulesList.add(rule.copy());
+        }
+        return rulesList;
+    }
+
+    /**
+     * @return a copy of the geolocation compiled in this instance
+     */
+    public Geolocation getGeolocation() {
+        return new Geolocation(geolocation);
+    }
+
+    /**
+     * Get the schedule of the input date, built on its own in the same way as
+     * during {@link #evaluate(LocalDateTime)}
+     *
+     * @param date the date to be built
+     * @return the DaySchedule of the input date
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public DaySchedule getDaySchedule(LocalDate date)
+            throws OpeningHoursEvaluationException {
+        if (weeklySchedule != null) {
+            return weeklySchedule.get(date.getDayOfWeek().ordinal());
+        }
+        DaySchedule schedule = (yearTable != null) ? yearTable.getDay(date) : null;
+        if (schedule != null) {
+            return schedule;
+        }
+        schedule = dayCache.get(date);
+        if (schedule == null) {
+            MonthRule monthRule = new MonthRule(rules, plans, geolocation);
+            Week oneDay = monthRule.buildOneDay(date.atStartOfDay());
+            schedule = oneDay.getDaySchedules().get(0);
+            dayCache.put(date, schedule);
+        }
+        return schedule;
+    }
+
+    /**
+     * Get the schedule of each day, from Monday to Sunday, of the week of the
+     * input date. The days are built together as a Week, in the same way as
+     * during {@link #getNextEvent(LocalDateTime)}
+     *
+     * @param date a date in the week to be built
+     * @return an unmodifiable List of 7 DaySchedule, starting from Monday
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public List<DaySchedule> getWeekSchedule(LocalDate date)
+            throws OpeningHoursEvaluationException {
+        if (weeklySchedule != null) {
+            return weeklySchedule;
+        }
+        LocalDate monday = WeekManager.getFirstDayOfWeek(date);
+        if (yearTable != null) {
+            List<DaySchedule> schedules = yearTable.getWeek(monday);
+            if (schedules == null) {
+                MonthRule monthRule = new MonthRule(rules, plans, geolocation);
+                monthRule.buildWeek(monday.atStartOfDay());
+                schedules = yearTable.putWeek(monday, monthRule.snapshotWeek());
+            }
+            return schedules;
+        }
+        List<DaySchedule> schedules = weekCache.get(monday);
+        if (schedules == null) {
+            MonthRule monthRule = new MonthRule(rules, plans, geolocation);
+            monthRule.buildWeek(monday.atStartOfDay());
+            schedules = Collections.unmodifiableList(Arrays.asList(monthRule.snapshotWeek()));
+            weekCache.put(monday, schedules);
+        }
+        return schedules;
+    }
+
+    /**
+     * @return the unmodifiable list of Rules compiled in this instance, not
+     *      to be changed, see {@link #getRules()} for a copy
+     */
+    List<Rule> getCompiledRules() {
+        return rules;
+    }
+
+    /**
+     * @return the geolocation compiled in this instance, not to be changed,
+     *      see {@link #getGeolocation()} for a copy
+     */
+    Geolocation getCompiledGeolocation() {
+        return geolocation;
+    }
+
+    /**
+     * @return the coarse index of the compiled Rules
+     */
+    RuleIndex getRuleIndex() {
+        return ruleIndex;
+    }
+
+    /**
+     * @return the boundaries of the selectors of the compiled Rules
+     */
+    RuleBoundaries getRuleBoundaries() {
+        return ruleBoundaries;
+    }
+
+    /**
+     * @return true if the Rules have variable times (sunrise, dusk, ...),
+     *      the only ones depending on the coordinates and timezone of the
+     *      geolocation
+     */
+    boolean hasVariableTimes() {
+        return variableTimes;
+    }
+
+    /**
+     * @return true if the Rules only depend on the weekday, in which case
+     *      {@link #getWeekSchedule(LocalDate)} is the same for every date
+     */
+    boolean isWeekly() {
+        return weeklySchedule != null;
+    }
+
+    /**
+     * @return the table of built years used instead of the cache of built
+     *      weeks, null if the Rules do not need one
+     */
+    @Nullable
+    YearTable getYearTable() {
+        return yearTable;
+    }
+
+    /**
+     * @return the cache of built days, used in {@link #evaluate(LocalDateTime)}
+     *      and {@link #checkStatus(LocalDateTime)}, mainly for its statistics
+     */
+    public LruCache<LocalDate, DaySchedule> getDayCache() {
+        return dayCache;
+    }
+
+    /**
+     * @return the cache of built weeks, used in
+     *      {@link #getNextEvent(LocalDateTime)} and
+     *      {@link #getLastEvent(LocalDateTime)}, mainly for its statistics.
+     *      It stays empty when built weeks are kept in a table of years.
+     */
+    public LruCache<LocalDate, List<DaySchedule>> getWeekCache() {
+        return weekCache;
+    }
+
+    /**
+     * Evaluate and return a structured Result based on the input time. See
+     * {@link Result} for more details on how to work with this
+     *
+     * @param inputTime a LocalDateTime instance
+     * @return result of the evaluation
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public Result evaluate(LocalDateTime inputTime)
+            throws OpeningHoursEvaluationException {
+        LocalDate date = inputTime.toLocalDate();
+        return getDaySchedule(date).checkStatus(date, Utils.timeInMinute(inputTime));
+    }
+
+    /**
+     * Get the Status at the input time
+     *
+     * @param inputTime a LocalDateTime instance
+     * @return a Status instance
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public Status checkStatus(LocalDateTime inputTime)
+            throws OpeningHoursEvaluationException {
+        return getDaySchedule(inputTime.toLocalDate()).getStatus(Utils.timeInMinute(inputTime));
+    }
+
+    /**
+     * Get the Status at a time given in minutes since 1970-01-01T00:00, see
+     * {@link #toEpochMinute(LocalDateTime)}. Once the day of the input time
+     * has been built, this allocates nothing: the built days of the last
+     * {@link #FAST_TABLE_SIZE} distinct dates are kept as {@link DayBitmap} in
+     * a table of their own, indexed by epoch day.
+     *
+     * @param epochMinute the local time to be checked, in minutes since
+     *      1970-01-01T00:00
+     * @return a Status instance
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public Status checkStatusFast(long epochMinute)
+            throws OpeningHoursEvaluationException {
+        long epochDay = Math.floorDiv(epochMinute, MINUTES_PER_DAY);
+        if (weeklyBitmaps != null) {
+            // 1970-01-01 is a Thursday
+            return weeklyBitmaps[(int) Math.floorMod(epochDay + 3, 7)]
+                        .getStatus((int) Math.floorMod(epochMinute, MINUTES_PER_DAY));
+        }
+        DaySlot[] table = fastTable;
+        if (table == null) {
+            // a racing thread may allocate its own, losing a few slots once
+            table = new DaySlot[FAST_TABLE_SIZE];
+            fastTable = table;
+        }
+        int index = (int) (epochDay & (FAST_TABLE_SIZE - 1));
+        DaySlot slot = table[index];
+        if (slot == null || slot.epochDay != epochDay
+                || (ttlNanos > 0 && System.nanoTime() - slot.builtAt >= ttlNanos)) {
+            slot = new DaySlot(epochDay, new DayBitmap(getDaySchedule(LocalDate.ofEpochDay(epochDay))));
+            table[index] = slot;
+        }
+        return slot.bitmap.getStatus((int) Math.floorMod(epochMinute, MINUTES_PER_DAY));
+    }
+
+    /**
+     * Convert a local time to minutes since 1970-01-01T00:00, as used in
+     * {@link #checkStatusFast(long)}. Seconds are ignored.
+     *
+     * @param time a LocalDateTime instance
+     * @return minutes since 1970-01-01T00:00
+     */
+    public static long toEpochMinute(LocalDateTime time) {
+        return time.toLocalDate().toEpochDay() * MINUTES_PER_DAY
+            + time.getHour() * 60 + time.getMinute();
+    }
+
+    /**
+     * Get the Status at each of the input times. Each week needed is built
+     * only once, and the input times are swept in order.
+     *
+     * @param inputTimes the times to be checked
+     * @return the Status at each input time, in the order of the set
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public Status[] evaluateAll(SortedSet<LocalDateTime> inputTimes)
+            throws OpeningHoursEvaluationException {
+        return sweep(inputTimes);
+    }
+
+    /**
+     * Get the Status at regular steps of a range of time. Each week needed is
+     * built only once.
+     *
+     * @param from start of the range, inclusive
+     * @param to end of the range, exclusive
+     * @param step time between two checked times, must be positive
+     * @return the Status at from, from + step, from + 2*step, ... before to
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public Status[] evaluateAll(LocalDateTime from, LocalDateTime to, Duration step)
+            throws OpeningHoursEvaluationException {
+        if (step.isNegative() || step.isZero()) {
+            throw new IllegalArgumentException("Step must be positive");
+        }
+        List<LocalDateTime> inputTimes = new ArrayList<>();
+        for (LocalDateTime time = from; time.isBefore(to); time = time.plus(step)) {
+            inputTimes.add(time);
+        }
+        return sweep(inputTimes);
+    }
+
+    /**
+     * Helper for evaluateAll(), check input times in order, building a week
+     * only when the time falls out of the last built week
+     */
+    private Status[] sweep(Collection<LocalDateTime> inputTimes)
+            throws OpeningHoursEvaluationException {
+        Status[] result = new Status[inputTimes.size()];
+        LocalDate monday = null;
+        List<DaySchedule> week = null;
+        int i = 0;
+        for (LocalDateTime inputTime : inputTimes) {
+            LocalDate date = inputTime.toLocalDate();
+            if (week == null || date.isBefore(monday) || !date.isBefore(monday.plusWeeks(1))) {
+                week = getWeekSchedule(date);
+                monday = WeekManager.getFirstDayOfWeek(date);
+            }
+            result[i++] = week.get(date.getDayOfWeek().ordinal()).getStatus(Utils.timeInMinute(inputTime));
+        }
+        return result;
+    }
+
+    /**
+     * Get the timeline of a range of time, as consecutive segments in which
+     * the Status and comment do not change. Segments are merged across days,
+     * and each week needed is built only once.
+     *
+     * @param from start of the range, inclusive
+     * @param to end of the range, exclusive
+     * @return the segments covering the range, in order, empty if the range
+     *      is empty
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public List<TimelineSegment> getTimeline(LocalDateTime from, LocalDateTime to)
+            throws OpeningHoursEvaluationException {
+        List<TimelineSegment> result = new ArrayList<>();
+        LocalDateTime segmentStart = null;
+        Status segmentStatus = null;
+        String segmentComment = null;
+        LocalDateTime current = from;
+        for (LocalDate date = from.toLocalDate(); current.isBefore(to); date = date.plusDays(1)) {
+            DaySchedule day = getWeekSchedule(date).get(date.getDayOfWeek().ordinal());
+            for (TimeRange timerange : day.getPaddedTimes()) {
+                LocalDateTime end = date.atStartOfDay().plusMinutes(timerange.getEnd());
+                if (!end.isAfter(current)) {
+                    continue;
+                }
+                if (segmentStatus != timerange.getStatus()
+                        || !Objects.equals(segmentComment, timerange.getComment())) {
+                    if (segmentStatus != null) {
+                        result.add(new TimelineSegment(segmentStart, current, segmentStatus, segmentComment));
+                    }
+                    segmentStart = current;
+                    segmentStatus = timerange.getStatus();
+                    segmentComment = timerange.getComment();
+                }
+                if (!end.isBefore(to)) {
+                    current = to;
+                    break;
+                }
+                current = end;
+            }
+        }
+        if (segmentStatus != null) {
+            result.add(new TimelineSegment(segmentStart, current, segmentStatus, segmentComment));
+        }
+        return result;
+    }
+
+    /**
+     * Return next differing event of the input time (status different
+     * from status of the evaluation of inputTime).
+     *
+     * @param inputTime time to be checked
+     * @return next differing event of the input time
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public Result getNextEvent(LocalDateTime inputTime)
+            throws OpeningHoursEvaluationException {
+        return new TimeTraveller(this).getDifferingEvent(inputTime, true);
+    }
+
+    /**
+     * Return last differing event of the input time (status different
+     * from status of the evaluation of inputTime).
+     *
+     * @param inputTime time to be checked
+     * @return last differing event of the input time
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public Result getLastEvent(LocalDateTime inputTime)
+            throws OpeningHoursEvaluationException {
+        return new TimeTraveller(this).getDifferingEvent(inputTime, false);
+    }
+
+    /**
+     * A built day in the table of {@link #checkStatusFast(long)}
+     */
+    private static class DaySlot {
+        final long      epochDay;
+        final DayBitmap bitmap;
+        final long      builtAt = System.nanoTime();
+
+        DaySlot(long epochDay, DayBitmap bitmap) {
+            this.epochDay = epochDay;
+            this.bitmap = bitmap;
+        }
+    }
+
+    /**
+     * A builder of CompiledOpeningHours, from either an opening hours tag or a
+     * list of Rules. A Builder is not thread-safe, but the instances it builds
+     * are. By default, parsing is non-strict, the geolocation is the default
+     * one and {@link #DEFAULT_CACHE_SIZE} days are cached without expiry.
+     */
+    public static class Builder {
+        private String      openingHours    = null;
+        private List<Rule>  rules           = null;
+        private boolean     isStrict        = false;
+        private Geolocation geolocation     = new Geolocation();
+        private int         cacheSize       = DEFAULT_CACHE_SIZE;
+        private long        ttl             = 0;
+        private TimeUnit    unit            = TimeUnit.MILLISECONDS;
+
+        /** Use {@link CompiledOpeningHours#builder()} */
+        Builder() {
+            // empty on purpose
+        }
+
+        /**
+         * Set the opening hours tag to be parsed, replacing any Rules set
+         *
+         * @param openingHours an opening hours tag
+         * @return this Builder
+         */
+        public Builder setOpeningHoursTag(@Nonnull String openingHours) {
+            this.openingHours = openingHours;
+            this.rules = null;
+            return this;
+        }
+
+        /**
+         * Set the Rules to be compiled, replacing any opening hours tag set
+         *
+         * @param rules a list of Rules, copied during {@link #build()}
+         * @return this Builder
+         */
+        public Builder setRules(@Nonnull List<Rule> rules) {
+            this.rules = rules;
+            this.openingHours = null;
+            return this;
+        }
+
+        /**
+         * @param isStrict parsing mode of the opening hours tag, true to turn
+         *      on strict
+         * @return this Builder
+         */
+        public Builder setStrictParsing(boolean isStrict) {
+            this.isStrict = isStrict;
+            return this;
+        }
+
+        /**
+         * @param geolocation the geolocation, copied during {@link #build()}
+         * @return this Builder
+         */
+        public Builder setGeolocation(@Nonnull Geolocation geolocation) {
+            this.geolocation = geolocation;
+            return this;
+        }
+
+        /**
+         * Set the options of the cache of built days
+         *
+         * @param cacheSize maximum number of built days kept, 0 to disable
+         *      caching
+         * @param ttl time after which a built day is rebuilt, 0 for never
+         * @param unit the unit of ttl
+         * @return this Builder
+         */
+        public Builder setCacheOptions(int cacheSize, long ttl, @Nonnull TimeUnit unit) {
+            this.cacheSize = cacheSize;
+            this.ttl = ttl;
+            this.unit = unit;
+            return this;
+        }
+
+        /**
+         * Build an immutable CompiledOpeningHours from the options set
+         *
+         * @return a new CompiledOpeningHours
+         * @throws OpeningHoursParseException when there's problem during parsing
+         */
+        public CompiledOpeningHours build() throws OpeningHoursParseException {
+            List<Rule> toCompile = rules;
+            if (openingHours != null) {
+                OpeningHoursParser parser = new OpeningHoursParser(new ByteArrayInputStream(openingHours.getBytes()));
+                toCompile = parser.rules(isStrict);
+            } else if (toCompile == null) {
+                throw new IllegalStateException("Either an opening hours tag or Rules must be set");
+            }
+            return new CompiledOpeningHours(toCompile, geolocation, cacheSize, ttl, unit);
+        }
+    }
+}
@@ -0,0 +1,548 @@
+package openinghoursevaluator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.poole.openinghoursparser.OpeningHoursParseException;
+import ch.poole.openinghoursparser.OpeningHoursParser;
+import ch.poole.openinghoursparser.Rule;
+import ch.poole.openinghoursparser.Util;
+
+/**
+ * A versioned binary file of many {@link CompiledOpeningHours}, written once
+ * with a {@link Writer} and memory mapped by {@link #read(Path)}, so that a
+ * process can start serving a large number of schedules without parsing and
+ * building them all first.
+ * <p>
+ * Each schedule keeps its selectors as the normalized opening hours string of
+ * its Rules, its geolocation and, when the Rules only depend on the weekday,
+ * its 7 days as IDs of day templates. Templates are shared by all schedules
+ * of a file, so identical days of different POIs are stored once. Reading a
+ * file only maps it and indexes its strings; a schedule is parsed when
+ * {@link #get(int)} is first called for it, and its week is then restored from
+ * the templates instead of being built again through {@link MonthRule}.
+ * <p>
+ * The file is little endian, made of a header (magic "OHCS", version, number
+ * of schedules, templates, time ranges, overridden Rules and strings, 4 bytes
+ * each, and 4 bytes of padding), the schedules (latitude and longitude as
+ * doubles, the IDs of the opening hours string, country, subregion, locale
+ * and timezone, and 7 template IDs, -1 if not weekly, 64 bytes each), the
+ * templates (first time range, number of time ranges, first overridden Rule,
+ * number of overridden Rules, 16 bytes each), the time ranges (start and end
+ * minutes as shorts, the Status as a byte, a byte of padding, the index of
+ * the defining Rule as a short and the ID of the comment, 12 bytes each), the
+ * indices of overridden Rules (4 bytes each), then the strings, each as its
+ * length in bytes followed by its UTF-8 bytes. String IDs are -1 for null.
+ * <p>
+ * Instances of this class are immutable and thread-safe.
+ */
+public final class CompiledSchedules {
+    // "OHCS" in ASCII
+    public static final int     MAGIC           = 0x5343484F;
+    public static final int     VERSION         = 1;
+
+    static final int            HEADER_SIZE     = 32;
+    static final int            SCHEDULE_SIZE   = 64;
+    static final int            TEMPLATE_SIZE   = 16;
+    static final int            RANGE_SIZE      = 12;
+    static final int            NONE            = -1;
+
+    // offsets of fields in a schedule
+    static final int            LATITUDE        = 0;
+    static final int            LONGITUDE       = 8;
+    static final int            OPENING_HOURS   = 16;
+    static final int            COUNTRY         = 20;
+    static final int            SUBREGION       = 24;
+    static final int            LOCALE          = 28;
+    static final int            TIMEZONE        = 32;
+    static final int            DAYS            = 36;
+
+    private static final Status[] STATUSES      = Status.values();
+
+    private final int           size;
+    private final ByteBuffer    schedules;
+    private final ByteBuffer    templates;
+    private final ByteBuffer    ranges;
+    private final ByteBuffer    overridden;
+    private final ByteBuffer    stringTable;
+    // position of each string in stringTable
+    private final int[]         stringOffsets;
+
+    /** Use {@link #read(Path)} */
+    private CompiledSchedules(int size, ByteBuffer schedules, ByteBuffer templates, ByteBuffer ranges,
+                              ByteBuffer overridden, ByteBuffer stringTable, int[] stringOffsets) {
+        this.size = size;
+        this.schedules = schedules;
+        this.templates = templates;
+        this.ranges = ranges;
+        this.overridden = overridden;
+        this.stringTable = stringTable;
+        this.stringOffsets = stringOffsets;
+    }
+
+    /**
+     * @return a new, empty Writer
+     */
+    public static Writer writer() {
+        return new Writer();
+    }
+
+    /**
+     * Read schedules from a binary file written by a {@link Writer}. The file
+     * is memory mapped and read in place, only the positions of its strings
+     * are computed.
+     *
+     * @param path path of the file
+     * @return the schedules of the file
+     * @throws IOException if the file can't be read or is not in this format
+     */
+    public static CompiledSchedules read(@Nonnull Path path) throws IOException {
+        ByteBuffer file;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (file.remaining() < HEADER_SIZE || file.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a file of compiled schedules");
+        }
+        if (file.getInt(4) != VERSION) {
+            throw new IOException("Unsupported version " + file.getInt(4) + " of compiled schedules in " + path);
+        }
+        int size = file.getInt(8);
+        int templateCount = file.getInt(12);
+        int rangeCount = file.getInt(16);
+        int overriddenCount = file.getInt(20);
+        int stringCount = file.getInt(24);
+        long stringsStart = HEADER_SIZE + (long) size * SCHEDULE_SIZE + (long) templateCount * TEMPLATE_SIZE
+                            + (long) rangeCount * RANGE_SIZE + (long) overriddenCount * Integer.BYTES;
+        if (size < 0 || templateCount < 0 || rangeCount < 0 || overriddenCount < 0 || stringCount < 0
+                || stringsStart + (long) stringCount * Integer.BYTES > file.limit()) {
+            throw new IOException("Truncated compiled schedules in " + path);
+        }
+        int position = HEADER_SIZE;
+        ByteBuffer schedules = slice(file, position, size * SCHEDULE_SIZE);
+        position += size * SCHEDULE_SIZE;
+        ByteBuffer templates = slice(file, position, templateCount * TEMPLATE_SIZE);
+        position += templateCount * TEMPLATE_SIZE;
+        ByteBuffer ranges = slice(file, position, rangeCount * RANGE_SIZE);
+        position += rangeCount * RANGE_SIZE;
+        ByteBuffer overridden = slice(file, position, overriddenCount * Integer.BYTES);
+        position += overriddenCount * Integer.BYTES;
+        ByteBuffer stringTable = slice(file, position, file.limit() - position);
+        int[] stringOffsets = new int[stringCount];
+        int offset = 0;
+        for (int i=0; i < stringCount; i++) {
+            if (offset + Integer.BYTES > stringTable.limit()
+                    || stringTable.getInt(offset) < 0
+                    || offset + Integer.BYTES + stringTable.getInt(offset) > stringTable.limit()) {
+                throw new IOException("Truncated compiled schedules in " + path);
+            }
+            stringOffsets[i] = offset;
+            offset += Integer.BYTES + stringTable.getInt(offset);
+        }
+        return new CompiledSchedules(size, schedules, templates, ranges, overridden, stringTable, stringOffsets);
+    }
+
+    /** Helper for read(), get a section of the mapped file */
+    private static ByteBuffer slice(ByteBuffer file, int position, int length) {
+        ByteBuffer section = file.duplicate();
+        // on Buffer, as ByteBuffer only overrides position(int) and limit(int) from Java 9
+        ((Buffer) section).position(position).limit(position + length);
+        return section.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the number of schedules
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the normalized opening hours string of a schedule
+     *
+     * @param index index of the schedule, in the order it was added
+     * @return the opening hours string
+     */
+    public String getOpeningHours(int index) {
+        return getString(schedules.getInt(index * SCHEDULE_SIZE + OPENING_HOURS));
+    }
+
+    /**
+     * Get the geolocation of a schedule
+     *
+     * @param index index of the schedule, in the order it was added
+     * @return a new Geolocation
+     */
+    public Geolocation getGeolocation(int index) {
+        int base = index * SCHEDULE_SIZE;
+        String locale = getString(schedules.getInt(base + LOCALE));
+        return new Geolocation(schedules.getDouble(base + LATITUDE), schedules.getDouble(base + LONGITUDE),
+                               getString(schedules.getInt(base + COUNTRY)),
+                               getString(schedules.getInt(base + SUBREGION)),
+                               (locale == null) ? Locale.ROOT : Locale.forLanguageTag(locale),
+                               ZoneId.of(getString(schedules.getInt(base + TIMEZONE))));
+    }
+
+    /**
+     * @param index index of the schedule, in the order it was added
+     * @return true if the Rules of the schedule only depend on the weekday,
+     *      in which case its week is stored
+     */
+    public boolean isWeekly(int index) {
+        return schedules.getInt(index * SCHEDULE_SIZE + DAYS) != NONE;
+    }
+
+    /**
+     * Get a schedule as a CompiledOpeningHours, parsing its opening hours
+     * string. If the schedule is weekly, its week is restored from the day
+     * templates rather than built again. Every call returns a new instance,
+     * which callers should keep.
+     *
+     * @param index index of the schedule, in the order it was added
+     * @return a new CompiledOpeningHours, with the default cache options
+     * @throws OpeningHoursParseException when there's problem during parsing
+     */
+    public CompiledOpeningHours get(int index) throws OpeningHoursParseException {
+        String openingHours = getOpeningHours(index);
+        OpeningHoursParser parser = new OpeningHoursParser(
+                new ByteArrayInputStream(openingHours.getBytes(StandardCharsets.UTF_8)));
+        List<Rule> rules = parser.rules(false);
+        List<DaySchedule> week = null;
+        if (isWeekly(index)) {
+            DaySchedule[] days = new DaySchedule[7];
+            for (int i=0; i < days.length; i++) {
+                days[i] = getTemplate(schedules.getInt(index * SCHEDULE_SIZE + DAYS + i * Integer.BYTES), rules);
+            }
+            week = Arrays.asList(days);
+        }
+        return CompiledOpeningHours.restore(rules, getGeolocation(index), week);
+    }
+
+    /**
+     * Get the ID of the template of a day of a weekly schedule
+     *
+     * @param index index of a weekly schedule
+     * @param weekday the day of the week, 0 for Monday
+     * @return the ID of the day template
+     */
+    int getDayTemplate(int index, int weekday) {
+        return schedules.getInt(index * SCHEDULE_SIZE + DAYS + weekday * Integer.BYTES);
+    }
+
+    /**
+     * Get the Status at a time of day in a day template, read in place
+     *
+     * @param template ID of a day template
+     * @param minute time of day in minutes
+     * @return the Status at that time, CLOSED if no time range covers it
+     */
+    Status getStatus(int template, int minute) {
+        int base = template * TEMPLATE_SIZE;
+        int firstRange = templates.getInt(base);
+        int end = firstRange + templates.getInt(base + 4);
+        for (int i=firstRange; i < end; i++) {
+            int position = i * RANGE_SIZE;
+            if (minute < ranges.getShort(position)) {
+                break;
+            }
+            if (minute < ranges.getShort(position + 2)) {
+                return STATUSES[ranges.get(position + 4)];
+            }
+        }
+        return Status.CLOSED;
+    }
+
+    /**
+     * Find the first time of day, from an input time, at which the Status in
+     * a day template differs from an input Status, read in place
+     *
+     * @param template ID of a day template
+     * @param from time of day in minutes to search from
+     * @param status the Status to differ from
+     * @return the time of day in minutes, -1 if the Status stays the same
+     *      until the end of the day
+     */
+    int getDifferingMinute(int template, int from, Status status) {
+        int base = template * TEMPLATE_SIZE;
+        int firstRange = templates.getInt(base);
+        int end = firstRange + templates.getInt(base + 4);
+        int current = from;
+        for (int i=firstRange; i < end; i++) {
+            int position = i * RANGE_SIZE;
+            int rangeStart = ranges.getShort(position);
+            int rangeEnd = ranges.getShort(position + 2);
+            if (rangeEnd <= current) {
+                continue;
+            }
+            // the gap before the range is closed
+            if (rangeStart > current) {
+                if (status != Status.CLOSED) {
+                    return current;
+                }
+                current = rangeStart;
+            }
+            if (STATUSES[ranges.get(position + 4)] != status) {
+                return current;
+            }
+            current = rangeEnd;
+        }
+        return (current < TimeRange.MAX_TIME && status != Status.CLOSED) ? current : -1;
+    }
+
+    /** Helper for get(), rebuild an interned day template with its Rules */
+    private DaySchedule getTemplate(int id, List<Rule> rules) {
+        int base = id * TEMPLATE_SIZE;
+        int firstRange = templates.getInt(base);
+        int rangeCount = templates.getInt(base + 4);
+        int firstOverridden = templates.getInt(base + 8);
+        int overriddenCount = templates.getInt(base + 12);
+        List<TimeRange> openingTimes = new ArrayList<>(rangeCount);
+        for (int i=firstRange; i < firstRange + rangeCount; i++) {
+            int position = i * RANGE_SIZE;
+            TimeRange timerange = new TimeRange(ranges.getShort(position), ranges.getShort(position + 2),
+                                                STATUSES[ranges.get(position + 4)]);
+            timerange.setComment(getString(ranges.getInt(position + 8)));
+            short rule = ranges.getShort(position + 6);
+            timerange.setDefiningRule((rule == NONE) ? null : rules.get(rule));
+            openingTimes.add(timerange);
+        }
+        List<Rule> overriddenRules = new ArrayList<>(overriddenCount);
+        for (int i=firstOverridden; i < firstOverridden + overriddenCount; i++) {
+            overriddenRules.add(rules.get(overridden.getInt(i * Integer.BYTES)));
+        }
+        return DaySchedule.intern(new DaySchedule(openingTimes, overriddenRules));
+    }
+
+    /** Get a string by its ID, decoding it from the mapped file */
+    @Nullable
+    private String getString(int id) {
+        if (id == NONE) {
+            return null;
+        }
+        int offset = stringOffsets[id];
+        byte[] bytes = new byte[stringTable.getInt(offset)];
+        ByteBuffer string = stringTable.duplicate();
+        ((Buffer) string).position(offset + Integer.BYTES);
+        string.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A writer of a file of compiled schedules, collecting schedules in memory
+     * until {@link #write(Path)}. A Writer is not thread-safe.
+     */
+    public static class Writer {
+        // any date, weekly schedules have the same week for every date
+        private static final LocalDate ANY_DATE = LocalDate.of(2001, 1, 1);
+
+        private final List<double[]>            coordinates     = new ArrayList<>();
+        private final List<int[]>               scheduleFields  = new ArrayList<>();
+
+        // distinct templates, each as its time ranges then overridden Rules
+        private final List<int[]>               templates       = new ArrayList<>();
+        private final Map<List<Integer>, Integer> templateIds   = new HashMap<>();
+        private int                             rangeCount      = 0;
+        private int                             overriddenCount = 0;
+
+        private final List<String>              strings         = new ArrayList<>();
+        private final Map<String, Integer>      stringIds       = new HashMap<>();
+
+        /** Use {@link CompiledSchedules#writer()} */
+        Writer() {
+            // empty on purpose
+        }
+
+        /**
+         * Add a schedule
+         *
+         * @param compiled the CompiledOpeningHours to be written
+         * @return the index of the schedule in the file
+         * @throws OpeningHoursEvaluationException when there's problem building
+         *      the week of a weekly schedule
+         */
+        public int add(@Nonnull CompiledOpeningHours compiled) throws OpeningHoursEvaluationException {
+            List<Rule> rules = compiled.getCompiledRules();
+            Geolocation geolocation = compiled.getCompiledGeolocation();
+            int[] fields = new int[(SCHEDULE_SIZE - OPENING_HOURS) / Integer.BYTES];
+            fields[0] = intern(Util.rulesToOpeningHoursString(rules));
+            fields[1] = intern(geolocation.getCountry());
+            fields[2] = intern(geolocation.getSubRegion());
+            fields[3] = intern(geolocation.getLocale().toLanguageTag());
+            fields[4] = intern(geolocation.getTimeZone().getId());
+            List<DaySchedule> week = (compiled.isWeekly()) ? compiled.getWeekSchedule(ANY_DATE) : null;
+            for (int i=0; i < 7; i++) {
+                fields[5 + i] = (week == null) ? NONE : addTemplate(week.get(i), rules);
+            }
+            coordinates.add(new double[] { geolocation.getLatitude(), geolocation.getLongitude() });
+            scheduleFields.add(fields);
+            return scheduleFields.size() - 1;
+        }
+
+        /** Helper for add(), get the ID of the template of a day */
+        private int addTemplate(DaySchedule day, List<Rule> rules) {
+            List<Integer> key = new ArrayList<>();
+            List<TimeRange> openingTimes = day.getOpeningTimes();
+            key.add(openingTimes.size());
+            for (TimeRange timerange : openingTimes) {
+                key.add(timerange.getStart() | timerange.getEnd() << 16);
+                key.add(timerange.getStatus().ordinal() | indexOf(rules, timerange.getDefiningRule()) << 16);
+                key.add(intern(timerange.getComment()));
+            }
+            for (Rule rule : day.getOverriddenRules()) {
+                key.add(indexOf(rules, rule));
+            }
+            Integer id = templateIds.get(key);
+            if (id == null) {
+                int[] template = new int[key.size()];
+                for (int i=0; i < template.length; i++) {
+                    template[i] = key.get(i);
+                }
+                id = templates.size();
+                templates.add(template);
+                templateIds.put(key, id);
+                rangeCount += openingTimes.size();
+                overriddenCount += day.getOverriddenRules().size();
+            }
+            return id;
+        }
+
+        /** Helper for addTemplate(), find a Rule, by identity first */
+        private static int indexOf(List<Rule> rules, @Nullable Rule rule) {
+            if (rule == null) {
+                return NONE;
+            }
+            for (int i=0; i < rules.size(); i++) {
+                if (rules.get(i) == rule) {
+                    return i;
+                }
+            }
+            return rules.indexOf(rule);
+        }
+
+        /** Get the ID of a string, adding it to the table if needed */
+        private int intern(@Nullable String string) {
+            if (string == null) {
+                return NONE;
+            }
+            Integer id = stringIds.get(string);
+            if (id == null) {
+                id = strings.size();
+                strings.add(string);
+                stringIds.put(string, id);
+            }
+            return id;
+        }
+
+        /**
+         * @return the number of schedules added
+         */
+        public int size() {
+            return scheduleFields.size();
+        }
+
+        /**
+         * @return the number of distinct day templates of the weekly schedules
+         */
+        public int getTemplateCount() {
+            return templates.size();
+        }
+
+        /**
+         * Write the schedules added to a binary file, replacing it if it exists
+         *
+         * @param path path of the file
+         * @throws IOException if the file can't be written
+         */
+        public void write(@Nonnull Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(channel);
+            }
+        }
+
+        /**
+         * Write the schedules added to a channel, see the format above
+         *
+         * @param channel the channel, left open
+         * @throws IOException if the channel can't be written
+         */
+        public void write(@Nonnull GatheringByteChannel channel) throws IOException {
+            int size = scheduleFields.size();
+            ByteBuffer header = allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(templates.size()).putInt(rangeCount)
+                  .putInt(overriddenCount).putInt(strings.size()).putInt(0);
+            ByteBuffer scheduleSection = allocate(size * SCHEDULE_SIZE);
+            for (int i=0; i < size; i++) {
+                scheduleSection.putDouble(coordinates.get(i)[0]).putDouble(coordinates.get(i)[1]);
+                for (int field : scheduleFields.get(i)) {
+                    scheduleSection.putInt(field);
+                }
+            }
+            ByteBuffer templateSection = allocate(templates.size() * TEMPLATE_SIZE);
+            ByteBuffer rangeSection = allocate(rangeCount * RANGE_SIZE);
+            ByteBuffer overriddenSection = allocate(overriddenCount * Integer.BYTES);
+            for (int[] template : templates) {
+                int ranges = template[0];
+                int overriddenRules = template.length - 1 - 3 * ranges;
+                templateSection.putInt(rangeSection.position() / RANGE_SIZE).putInt(ranges)
+                               .putInt(overriddenSection.position() / Integer.BYTES).putInt(overriddenRules);
+                for (int i=0; i < ranges; i++) {
+                    int times = template[1 + 3 * i];
+                    int statusRule = template[2 + 3 * i];
+                    rangeSection.putShort((short) (times & 0xFFFF)).putShort((short) (times >>> 16))
+                                .put((byte) (statusRule & 0xFF)).put((byte) 0)
+                                .putShort((short) (statusRule >> 16))
+                                .putInt(template[3 + 3 * i]);
+                }
+                for (int i=1 + 3 * ranges; i < template.length; i++) {
+                    overriddenSection.putInt(template[i]);
+                }
+            }
+            List<byte[]> encoded = new ArrayList<>(strings.size());
+            int stringBytes = 0;
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                stringBytes += Integer.BYTES + bytes.length;
+            }
+            ByteBuffer stringSection = allocate(stringBytes);
+            for (byte[] bytes : encoded) {
+                stringSection.putInt(bytes.length).put(bytes);
+            }
+            ByteBuffer[] buffers = { header, scheduleSection, templateSection, rangeSection,
+                                     overriddenSection, stringSection };
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) {
+                ((Buffer) buffer).flip();
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+        }
+
+        /** Helper for write(), allocate a little endian section */
+        private static ByteBuffer allocate(int capacity) {
+            return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
@@ -44,12 +44,26 @@ public class DateManager {
      */
     public List<List<LocalDate>> processDateRange(DateRange dateRange, Week week)
             throws OpeningHoursEvaluationException {
+        return processDateRange(dateRange, week.getYear());
+    }
+
+    /**
+     * Process the DateRange inside to a LocalDate range, for a DateRange
+     * applied in the input year, see {@link #processDateRange(DateRange, Week)}
+     * 
+     * @param dateRange a DateRange
+     * @param yearNum the year where this DateRange will apply
+     * @return a LocalDate range processed from DateRange
+     * @throws OpeningHoursEvaluationException when there's a problem during evaluation
+     */
+    public List<List<LocalDate>> processDateRange(DateRange dateRange, int yearNum)
+            throws OpeningHoursEvaluationException {
         List<List<LocalDate>> result = new ArrayList<>();
         DateWithOffset start = dateRange.getStartDate();
         DateWithOffset end = dateRange.getEndDate();
 
         // set default to use throughout the process
-        this.defaultYear = week.getYear();
+        this.defaultYear = yearNum;
         this.defaultMonth = start.getMonth();
         this.easterYear = defaultYear;
 
@@ -71,7 +85,12 @@ public class DateManager {
                 otherResult.add(toDate(end, defaultYear, defaultMonth, false));
                 result.add(otherResult);
             } else { 
-                subResult.add(toDate(end, defaultYear, defaultMonth, false));
+                // a year given at the start only, as in "2030 Jan-Feb", is
+                // the year of the end too
+                int endYear = (start.getYear() != YearRange.UNDEFINED_YEAR)
+                            ? start.getYear()
+                            : defaultYear;
+                subResult.add(toDate(end, endYear, defaultMonth, false));
             }
         } else if (start.isOpenEnded()) {
             subResult.add(processOpenEnd(subResult.get(0)));
@@ -89,10 +108,10 @@ public class DateManager {
      * @param end end of a DateRange
      * @return <0 if d1 is before d2, >0 if d1 is after d2, =0 if d1 is same day as d2
      */
-    private int compareStartAndEnd(DateWithOffset start, DateWithOffset end) {
+    private int compareStartAndEnd(DateWithOffset startDate, DateWithOffset endDate) {
         // Help fill start and end with easter year, if necessary
-        fillEaster(start);
-        fillEaster(end);
+        DateWithOffset start = fillEaster(startDate);
+        DateWithOffset end = fillEaster(endDate);
         // check year
         if (start.getYear() != YearRange.UNDEFINED_YEAR
                 && end.getYear() != YearRange.UNDEFINED_YEAR) {
@@ -156,17 +175,26 @@ public class DateManager {
     }
 
     /**
-     * Help fill start and end with easter year, if necessary
+     * Help fill start and end with easter year, if necessary. The input is
+     * not modified, since it belongs to a Rule that may be shared between
+     * threads.
+     * 
+     * @param date input DateWithOffset
+     * @return a copy of the input with the day and month of easter, or the
+     *      input itself if it is not easter
      */
-    private void fillEaster(DateWithOffset date) {
-        if (isEaster(date)) {
-            int year = (date.getYear() != YearRange.UNDEFINED_YEAR)
-                        ? date.getYear()
-                        : easterYear;
-            LocalDate easter = getEasterDate(year);
-            date.setDay(easter.getDayOfMonth());
-            date.setMonth(MonthRule.convertMonth(easter));
+    private DateWithOffset fillEaster(DateWithOffset date) {
+        if (!isEaster(date)) {
+            return date;
         }
+        int year = (date.getYear() != YearRange.UNDEFINED_YEAR)
+                    ? date.getYear()
+                    : easterYear;
+        LocalDate easter = getEasterDate(year);
+        DateWithOffset filled = date.copy();
+        filled.setDay(easter.getDayOfMonth());
+        filled.setMonth(MonthRule.convertMonth(easter));
+        return filled;
     }
 
     /**
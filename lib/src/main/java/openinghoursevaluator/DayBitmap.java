@@ -0,0 +1,96 @@
+package openinghoursevaluator;
+
+import java.util.Arrays;
+
+/**
+ * A compact, immutable snapshot of the Status of one day, storing a 2-bit
+ * status code for each of the 1440 minutes of the day in 45 longs (360 bytes).
+ * A status lookup is a single shift, without searching the opening times or
+ * allocating a Result, which is what {@link CompiledOpeningHours#checkStatusFast(long)}
+ * needs. Comments and overridden Rules are not kept, use the
+ * {@link DaySchedule} the bitmap was taken from for those.
+ */
+public class DayBitmap {
+    private static final int    MINUTES_PER_WORD    = 32;
+    private static final int    WORDS               = TimeRange.MAX_TIME / MINUTES_PER_WORD;
+    // low bit of every 2-bit code of a word
+    private static final long   LOW_BITS            = 0x5555555555555555L;
+
+    // 2-bit codes of minutes, see toCode(), 0 where nothing is set
+    private static final int    OPEN                = 1;
+    private static final int    UNKNOWN             = 2;
+    private static final int    CLOSED              = 3;
+
+    private final long[]    codes = new long[WORDS];
+
+    /**
+     * Constructor for a DayBitmap with the opening times of a DaySchedule
+     *
+     * @param schedule a DaySchedule
+     */
+    public DayBitmap(DaySchedule schedule) {
+        // the opening times of a DaySchedule don't overlap
+        for (TimeRange timerange : schedule.getOpeningTimes()) {
+            int start = timerange.getStart();
+            int end = timerange.getEnd();
+            long pattern = toCode(timerange.getStatus()) * LOW_BITS;
+            for (int word = start / MINUTES_PER_WORD; word * MINUTES_PER_WORD < end; word++) {
+                codes[word] |= pattern & rangeMask(word, start, end);
+            }
+        }
+    }
+
+    /**
+     * Get the Status at a time of the day
+     *
+     * @param minute time of the day in minutes
+     * @return the Status at that time
+     */
+    public Status getStatus(int minute) {
+        int code = (int) (codes[minute / MINUTES_PER_WORD] >>> (2 * (minute % MINUTES_PER_WORD))) & 3;
+        switch (code) {
+        case OPEN:      return Status.OPEN;
+        case UNKNOWN:   return Status.UNKNOWN;
+        default:        return Status.CLOSED;
+        }
+    }
+
+    /**
+     * Get the mask of the bits of a word that are within a range of time
+     */
+    private static long rangeMask(int word, int start, int end) {
+        int from = Math.max(start - word * MINUTES_PER_WORD, 0);
+        int to = Math.min(end - word * MINUTES_PER_WORD, MINUTES_PER_WORD);
+        if (from >= to) {
+            return 0;
+        }
+        long high = (to == MINUTES_PER_WORD) ? -1L : (1L << (2 * to)) - 1;
+        long low = (1L << (2 * from)) - 1;
+        return high & ~low;
+    }
+
+    /** Convert a Status to its 2-bit code */
+    private static long toCode(Status status) {
+        switch (status) {
+        case OPEN:      return OPEN;
+        case UNKNOWN:   return UNKNOWN;
+        default:        return CLOSED;
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof DayBitmap)) {
+            return false;
+        }
+        return Arrays.equals(codes, ((DayBitmap) other).codes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(codes);
+    }
+}
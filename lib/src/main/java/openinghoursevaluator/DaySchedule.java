@@ -0,0 +1,335 @@
+package openinghoursevaluator;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import ch.poole.openinghoursparser.Rule;
+
+/**
+ * An immutable snapshot of the cleaned opening times of one day, taken from a
+ * built {@link WeekDayRule}. Unlike a WeekDayRule, a DaySchedule is not linked
+ * to its neighbouring days and can be shared safely between threads, which
+ * makes it suitable for caching.
+ * <p>
+ * Built days are canonicalized with {@link #intern(DaySchedule)}, so that
+ * identical days, such as Monday to Friday of most tags or the same days of
+ * many POIs, share one instance, and comparing interned days is a reference
+ * comparison.
+ */
+public class DaySchedule {
+    // interned DaySchedules, dropped when no longer referenced elsewhere.
+    // Concurrent, so that threads building weeks don't wait on one lock
+    private static final ConcurrentMap<WeakKey, WeakKey> INTERNED = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<DaySchedule> COLLECTED = new ReferenceQueue<>();
+
+    // sorted, non-overlapping opening times of the day
+    private final TimeRange[]   openingTimes;
+    // same as openingTimes, but padded with CLOSED wherever there is a gap
+    private final TimeRange[]   paddedTimes;
+    private final List<Rule>    overriddenRules;
+    private final int           hash;
+    // toString() of the opening times, computed on first use
+    private String              string          = null;
+
+    /**
+     * Constructor for a DaySchedule, taking a snapshot of a built WeekDayRule.
+     * The WeekDayRule should have been cleaned beforehand.
+     *
+     * @param weekDayRule a built and cleaned WeekDayRule
+     */
+    public DaySchedule(WeekDayRule weekDayRule) {
+        this(weekDayRule.openingTimes, weekDayRule.getOverriddenRules());
+    }
+
+    /**
+     * Constructor for a DaySchedule with a list of sorted, non-overlapping
+     * opening times and a list of Rules overridden in that day
+     *
+     * @param openingTimes sorted, non-overlapping opening times
+     * @param overriddenRules Rules overridden in that day
+     */
+    DaySchedule(List<TimeRange> openingTimes, List<Rule> overriddenRules) {
+        this.openingTimes = copyOf(openingTimes);
+        this.paddedTimes = copyOf(WeekDayRule.closePad(Arrays.asList(this.openingTimes)));
+        this.overriddenRules = Collections.unmodifiableList(new ArrayList<>(overriddenRules));
+        this.hash = computeHashCode();
+    }
+
+    /** Helper for constructor, copy so that later changes cannot leak in */
+    private static TimeRange[] copyOf(List<TimeRange> timeranges) {
+        TimeRange[] result = new TimeRange[timeranges.size()];
+        for (int i=0; i < result.length; i++) {
+            result[i] = new TimeRange(timeranges.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Get the canonical instance of a DaySchedule: the first interned
+     * DaySchedule equal to it that is still in use, or the input itself
+     *
+     * @param schedule a DaySchedule
+     * @return a DaySchedule equal to the input, shared by every caller
+     */
+    public static DaySchedule intern(DaySchedule schedule) {
+        expungeCollected();
+        WeakKey key = new WeakKey(schedule, COLLECTED);
+        while (true) {
+            WeakKey existing = INTERNED.putIfAbsent(key, key);
+            if (existing == null) {
+                return schedule;
+            }
+            DaySchedule canonical = existing.get();
+            if (canonical != null) {
+                return canonical;
+            }
+            // collected but not expunged yet, replace it
+            INTERNED.remove(existing, existing);
+        }
+    }
+
+    /** Helper for intern(), drop the entries of collected DaySchedules */
+    private static void expungeCollected() {
+        Reference<? extends DaySchedule> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            INTERNED.remove(collected);
+        }
+    }
+
+    /**
+     * Weak key of the interned DaySchedules. Two keys are equal when they are
+     * the same key or their DaySchedules are equal, so a collected key only
+     * matches itself and can be removed once it is enqueued.
+     */
+    private static final class WeakKey extends WeakReference<DaySchedule> {
+        private final int hash;
+
+        WeakKey(DaySchedule schedule, ReferenceQueue<DaySchedule> queue) {
+            super(schedule, queue);
+            this.hash = schedule.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof WeakKey)) {
+                return false;
+            }
+            DaySchedule schedule = get();
+            return schedule != null && schedule.equals(((WeakKey) other).get());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * @return an unmodifiable view of the opening times of this DaySchedule
+     */
+    public List<TimeRange> getOpeningTimes() {
+        return Collections.unmodifiableList(Arrays.asList(openingTimes));
+    }
+
+    /**
+     * @return an unmodifiable view of the opening times of this DaySchedule,
+     *      with CLOSED TimeRanges filling the gaps so that the whole day is
+     *      covered
+     */
+    List<TimeRange> getPaddedTimes() {
+        return Collections.unmodifiableList(Arrays.asList(paddedTimes));
+    }
+
+    /**
+     * @return an unmodifiable list of Rules overridden in this DaySchedule
+     */
+    public List<Rule> getOverriddenRules() {
+        return overriddenRules;
+    }
+
+    /**
+     * Get the Status of the input time of day in this DaySchedule
+     *
+     * @param inputTime input time in minutes
+     * @return the Status at the input time
+     */
+    public Status getStatus(int inputTime) {
+        TimeRange found = find(inputTime);
+        return (found != null) ? found.getStatus() : Status.CLOSED;
+    }
+
+    /**
+     * Get the Result of evaluating the input time of day in this DaySchedule.
+     * This is equivalent to {@link WeekDayRule#checkStatus(java.time.LocalDateTime)}
+     *
+     * @param defDate the date this DaySchedule was built for, used in warnings
+     * @param inputTime input time in minutes
+     * @return a Result containing info on Status and comment
+     */
+    public Result checkStatus(LocalDate defDate, int inputTime) {
+        TimeRange found = find(inputTime);
+        Result result = (found != null) ? new Result(found)
+                                        : new Result(Status.CLOSED);
+        result.setOverriddenRules(overriddenRules);
+        String warning = result.generateOverridenWarning(defDate);
+        if (warning != null) {
+            result.getWarnings().add(warning);
+        }
+        return result;
+    }
+
+    /**
+     * Binary search for the TimeRange that the input time is within
+     *
+     * @param inputTime input time in minutes
+     * @return the TimeRange containing the input time, null if none
+     */
+    @Nullable
+    private TimeRange find(int inputTime) {
+        int low = 0;
+        int high = openingTimes.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            TimeRange check = openingTimes[mid];
+            if (inputTime < check.getStart()) {
+                high = mid - 1;
+            } else if (inputTime >= check.getEnd()) {
+                low = mid + 1;
+            } else {
+                return check;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the TimeRange whose Status is different from the TimeRange that
+     * the input time is within. Same as
+     * {@link WeekDayRule#getDifferingEventToday(int, boolean)}
+     *
+     * @param inputTime input time in minutes
+     * @param isNext true to look forward, false to look backward in time
+     * @return the differing TimeRange, null if none found
+     */
+    @Nullable
+    TimeRange getDifferingEventToday(int inputTime, boolean isNext) {
+        Status statusToCheck = null;
+        int current = (isNext) ? 0 : paddedTimes.length-1;
+        int target = (isNext) ? paddedTimes.length : -1;
+        while (current != target) {
+            TimeRange checkTime = paddedTimes[current];
+            if (statusToCheck == null) {
+                if (inputTime >= checkTime.getStart()
+                        && inputTime < checkTime.getEnd()) {
+                    statusToCheck = checkTime.getStatus();
+                }
+            } else if (checkTime.getStatus() != statusToCheck) {
+                return checkTime;
+            }
+            current = current + ((isNext) ? 1 : -1);
+        }
+        return null;
+    }
+
+    /**
+     * Return the TimeRange whose Status is different from the input Status.
+     * Same as {@link WeekDayRule#getDifferingEvent(Status, boolean)}
+     *
+     * @param status input Status
+     * @param isNext true to look forward, false to look backward in time
+     * @return TimeRange whose Status is different from the input Status,
+     *      null otherwise
+     */
+    @Nullable
+    TimeRange getDifferingEvent(Status status, boolean isNext) {
+        int current = (isNext) ? 0 : paddedTimes.length-1;
+        int target = (isNext) ? paddedTimes.length : -1;
+        while (current != target) {
+            TimeRange checkTime = paddedTimes[current];
+            if (checkTime.getStatus() != status) {
+                return checkTime;
+            }
+            current = current + ((isNext) ? 1 : -1);
+        }
+        return null;
+    }
+
+    /**
+     * Two DaySchedule are equal when their opening times have the same start,
+     * end, Status, comment and defining Rule, and the same Rules are
+     * overridden, so that evaluating either gives the same Result
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof DaySchedule)) {
+            return false;
+        }
+        DaySchedule o = (DaySchedule) other;
+        if (hash != o.hash || openingTimes.length != o.openingTimes.length
+                || !overriddenRules.equals(o.overriddenRules)) {
+            return false;
+        }
+        for (int i=0; i < openingTimes.length; i++) {
+            TimeRange timerange = openingTimes[i];
+            TimeRange otherTimerange = o.openingTimes[i];
+            if (!timerange.equals(otherTimerange)
+                    || !Objects.equals(timerange.getComment(), otherTimerange.getComment())
+                    || !Objects.equals(timerange.getDefiningRule(), otherTimerange.getDefiningRule())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /** Helper for the constructor, hash the opening times */
+    private int computeHashCode() {
+        int result = overriddenRules.size();
+        for (TimeRange timerange : openingTimes) {
+            result = 37 * result + timerange.hashCode();
+            result = 37 * result + timerange.getStatus().ordinal();
+            result = 37 * result + Objects.hashCode(timerange.getComment());
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        String result = string;
+        if (result == null) {
+            StringBuilder b = new StringBuilder();
+            for (TimeRange openingTime : openingTimes) {
+                if (openingTime.hasComment()
+                        || openingTime.getStatus() != Status.CLOSED) {
+                    b.append(openingTime.toString());
+                    b.append(" ");
+                }
+            }
+            // racy but benign, every thread computes the same String
+            result = b.toString();
+            string = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,168 @@
+package openinghoursevaluator;
+
+import java.io.ByteArrayInputStream;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import ch.poole.openinghoursparser.OpeningHoursParseException;
+import ch.poole.openinghoursparser.OpeningHoursParser;
+import ch.poole.openinghoursparser.Rule;
+
+/**
+ * A factory of {@link CompiledOpeningHours}, keeping a bounded cache of the
+ * ones already created, keyed by opening hours tag, parsing mode, country,
+ * sub region and locale. Since the same opening hours tags are repeated many
+ * times in the wild, parsing and compiling is then only done once per
+ * distinct tag and region.
+ * <p>
+ * Only variable times (sunrise, dusk, ...) depend on the coordinates and
+ * timezone of the geolocation, so they are part of the key only for tags
+ * having variable times. Otherwise, the returned CompiledOpeningHours may
+ * have been compiled with the coordinates of another geolocation of the same
+ * region, which gives the same evaluations.
+ * <p>
+ * The returned CompiledOpeningHours are shared and thread-safe. This class is
+ * thread-safe.
+ */
+public class EvaluatorFactory {
+    // default number of distinct tags kept
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    private static final EvaluatorFactory DEFAULT_FACTORY = new EvaluatorFactory(DEFAULT_CACHE_SIZE);
+
+    private final LruCache<Key, CompiledOpeningHours> cache;
+
+    /**
+     * Constructor for an EvaluatorFactory
+     *
+     * @param cacheSize maximum number of distinct compiled opening hours kept
+     */
+    public EvaluatorFactory(int cacheSize) {
+        cache = new LruCache<>(cacheSize);
+    }
+
+    /**
+     * @return a shared EvaluatorFactory with a cache of
+     *      {@link #DEFAULT_CACHE_SIZE} entries
+     */
+    public static EvaluatorFactory getDefault() {
+        return DEFAULT_FACTORY;
+    }
+
+    /**
+     * Get the compiled form of an opening hours tag, with non-strict parsing
+     * and default geolocation
+     *
+     * @param openingHours an opening hours tag
+     * @return a shared CompiledOpeningHours
+     * @throws OpeningHoursParseException when there's problem during parsing
+     */
+    public CompiledOpeningHours get(String openingHours)
+            throws OpeningHoursParseException {
+        return get(openingHours, false, new Geolocation());
+    }
+
+    /**
+     * Get the compiled form of an opening hours tag, parsing and compiling it
+     * only if it has not been done before with the same parsing mode and
+     * region, or the same coordinates and timezone for tags with variable
+     * times
+     *
+     * @param openingHours an opening hours tag
+     * @param isStrict parsing mode, true to turn on strict
+     * @param geolocation the geolocation, copied if it needs to be kept
+     * @return a shared CompiledOpeningHours
+     * @throws OpeningHoursParseException when there's problem during parsing
+     */
+    public CompiledOpeningHours get(@Nonnull String openingHours, boolean isStrict,
+                                    @Nonnull Geolocation geolocation)
+            throws OpeningHoursParseException {
+        Key key = new Key(openingHours, isStrict, geolocation, false);
+        CompiledOpeningHours compiled = cache.get(key);
+        if (compiled == null) {
+            OpeningHoursParser parser = new OpeningHoursParser(new ByteArrayInputStream(openingHours.getBytes()));
+            List<Rule> rules = parser.rules(isStrict);
+            compiled = new CompiledOpeningHours(rules, geolocation);
+            // kept for the region in any case, telling later lookups whether
+            // the tag has variable times
+            cache.put(key, compiled);
+            if (compiled.hasVariableTimes()) {
+                cache.put(new Key(openingHours, isStrict, geolocation, true), compiled);
+            }
+        } else if (compiled.hasVariableTimes()) {
+            Key placed = new Key(openingHours, isStrict, geolocation, true);
+            CompiledOpeningHours regional = compiled;
+            compiled = cache.get(placed);
+            if (compiled == null) {
+                // the Rules are already parsed
+                compiled = new CompiledOpeningHours(regional.getCompiledRules(), geolocation);
+                cache.put(placed, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * @return the cache of compiled opening hours, mainly for its statistics
+     */
+    public LruCache<?, CompiledOpeningHours> getCache() {
+        return cache;
+    }
+
+    /**
+     * Key of the cache. It only holds immutable parts of the geolocation, so
+     * no copy of it is needed.
+     */
+    private static class Key {
+        final String        openingHours;
+        final boolean       isStrict;
+        final String        country;
+        final String        subRegion;
+        final Locale        locale;
+        // coordinates and timezone, only for tags with variable times
+        final double        lat;
+        final double        lng;
+        final ZoneId        timezone;
+        final int           hash;
+
+        Key(String openingHours, boolean isStrict, Geolocation geolocation, boolean withPlace) {
+            this.openingHours = openingHours;
+            this.isStrict = isStrict;
+            this.country = geolocation.getCountry();
+            this.subRegion = geolocation.getSubRegion();
+            this.locale = geolocation.getLocale();
+            this.lat = (withPlace) ? geolocation.getLatitude() : Double.NaN;
+            this.lng = (withPlace) ? geolocation.getLongitude() : Double.NaN;
+            this.timezone = (withPlace) ? geolocation.getTimeZone() : null;
+            this.hash = Objects.hash(openingHours, isStrict, country, subRegion, locale, lat, lng, timezone);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key o = (Key) other;
+            return isStrict == o.isStrict
+                && openingHours.equals(o.openingHours)
+                && Objects.equals(country, o.country)
+                && Objects.equals(subRegion, o.subRegion)
+                && Objects.equals(locale, o.locale)
+                && Double.compare(lat, o.lat) == 0
+                && Double.compare(lng, o.lng) == 0
+                && Objects.equals(timezone, o.timezone);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -4,8 +4,10 @@ import java.time.ZoneId;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.iakovlev.timeshape.TimeZoneEngine;
@@ -15,8 +17,9 @@ import net.iakovlev.timeshape.TimeZoneEngine;
  * evaluator, for example, for getting location-dependent variable time
  */
 public class Geolocation {
-    // TimeZoneEngine takes time to init, so it will only be done once
-    public static final TimeZoneEngine engine = TimeZoneEngine.initialize();
+    // TimeZoneEngine takes time and memory to init, so it is only done once,
+    // and only when a timezone needs to be looked up from coordinates
+    private static volatile TimeZoneEngine engine = null;
     // Load the ISO 3166-1 alpha-3 to alpha-2 country code map
     private static Map<String, Locale> localeMap = initISOConversionMap();
 
@@ -69,6 +72,42 @@ public class Geolocation {
         // empty
     }
 
+    /**
+     * Constructor to copy another geolocation. This does not query the
+     * timezone again.
+     * 
+     * @param other the geolocation to copy
+     */
+    public Geolocation(Geolocation other) {
+        this.lat = other.lat;
+        this.lng = other.lng;
+        this.timezone = other.timezone;
+        this.country = other.country;
+        this.locale = other.locale;
+        this.subRegion = other.subRegion;
+    }
+
+    /**
+     * Constructor for a geolocation with all of its data, as written by
+     * {@link CompiledSchedules}. This does not query the timezone.
+     *
+     * @param lat latitude
+     * @param lng longitude
+     * @param country ISO 3166 2-letter country code (e.g. "VN")
+     * @param subRegion a subregion shortened name, or null
+     * @param locale the Locale
+     * @param timezone timezone of the location
+     */
+    Geolocation(double lat, double lng, String country, @Nullable String subRegion,
+                Locale locale, @Nonnull ZoneId timezone) {
+        this.lat = lat;
+        this.lng = lng;
+        this.country = country;
+        this.subRegion = subRegion;
+        this.locale = locale;
+        this.timezone = timezone;
+    }
+
     /**
      * Constructor for a geolocation, with input latitude, longitude, and a
      * country code.
@@ -98,6 +137,23 @@ public class Geolocation {
         setSubRegion(subRegion);
     }
 
+    /**
+     * Constructor for a geolocation, with input latitude, longitude, a country
+     * code, and a known timezone. This never looks up the timezone from the
+     * coordinates.
+     * 
+     * @param lat latitude
+     * @param lng longitude
+     * @param country ISO 3166 2-letter country code (e.g. "VN")
+     * @param timezone timezone of the location
+     */
+    public Geolocation(double lat, double lng, String country, @Nonnull ZoneId timezone) {
+        setLatitude(lat);
+        setLongitude(lng);
+        setCountry(country);
+        setTimeZone(timezone);
+    }
+
     /**
      * Constructor for a geolocation, with input latitude, longitude, and a locale
      * 
@@ -112,6 +168,23 @@ public class Geolocation {
         refreshTimeZone();
     }
 
+    /**
+     * Constructor for a geolocation, with input latitude, longitude, a locale,
+     * and a known timezone. This never looks up the timezone from the
+     * coordinates.
+     * 
+     * @param lat latitude
+     * @param lng longitude
+     * @param locale a Locale
+     * @param timezone timezone of the location
+     */
+    public Geolocation(double lat, double lng, Locale locale, @Nonnull ZoneId timezone) {
+        setLatitude(lat);
+        setLongitude(lng);
+        setLocale(locale);
+        setTimeZone(timezone);
+    }
+
     /**
      * @return the latitude of this geolocation
      */
@@ -234,6 +307,16 @@ public class Geolocation {
         this.subRegion = subRegion;
     }
 
+    /**
+     * Set the timezone of this geolocation directly, when it is already known.
+     * This avoids looking it up from the coordinates.
+     * 
+     * @param timezone timezone of the location
+     */
+    public void setTimeZone(@Nonnull ZoneId timezone) {
+        this.timezone = timezone;
+    }
+
     /**
      * Refresh the timezone of this geolocation with stored coordinates
      */
@@ -251,10 +334,79 @@ public class Geolocation {
      */
     @Nullable
     public static ZoneId getTimeZoneFromCoordinates(double lat, double lng) {
-        Optional<ZoneId> query = engine.query(lat, lng);
+        Optional<ZoneId> query = getEngine().query(lat, lng);
         return (query.isPresent()) ? query.get() : null;
     }
+
+    /**
+     * Get the TimeZoneEngine used to look up timezones from coordinates,
+     * initializing it for the whole world if it has not been initialized yet
+     * 
+     * @return the TimeZoneEngine
+     */
+    public static TimeZoneEngine getEngine() {
+        TimeZoneEngine result = engine;
+        if (result == null) {
+            synchronized (Geolocation.class) {
+                result = engine;
+                if (result == null) {
+                    result = TimeZoneEngine.initialize();
+                    engine = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Initialize the TimeZoneEngine only for the timezones within a bounding
+     * box, which is faster and takes much less memory than for the whole
+     * world. Only timezones lying entirely inside the box are loaded, so the
+     * box should cover the whole timezones of interest, not just the
+     * locations. Coordinates with no loaded timezone will have no timezone.
+     * This replaces any TimeZoneEngine initialized before.
+     * 
+     * @param minLat minimum latitude of the box
+     * @param minLng minimum longitude of the box
+     * @param maxLat maximum latitude of the box
+     * @param maxLng maximum longitude of the box
+     */
+    public static void initializeEngine(double minLat, double minLng, double maxLat, double maxLng) {
+        setEngine(TimeZoneEngine.initialize(minLat, minLng, maxLat, maxLng, true));
+    }
+
+    /**
+     * Set the TimeZoneEngine used to look up timezones from coordinates,
+     * replacing any TimeZoneEngine initialized before
+     * 
+     * @param timeZoneEngine a TimeZoneEngine
+     */
+    public static synchronized void setEngine(@Nonnull TimeZoneEngine timeZoneEngine) {
+        engine = timeZoneEngine;
+    }
      
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Geolocation)) {
+            return false;
+        }
+        Geolocation o = (Geolocation) other;
+        return Double.compare(lat, o.lat) == 0
+            && Double.compare(lng, o.lng) == 0
+            && Objects.equals(timezone, o.timezone)
+            && Objects.equals(country, o.country)
+            && Objects.equals(locale, o.locale)
+            && Objects.equals(subRegion, o.subRegion);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lat, lng, timezone, country, locale, subRegion);
+    }
+
     /**
      * Initialize mapping to convert from ISO 3166-1 alpha-2 country code to
      * ISO 3166-1 alpha-3 country code
@@ -2,6 +2,9 @@ package openinghoursevaluator;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -17,8 +20,22 @@ import io.github.goodudetheboy.worldholidaydates.holidaydata.HolidayData;
  * Helper class to process Holiday, and also parse holiday JSON data
  */
 public class HolidayManager {
-    public static final HolidayData holidayData = HolidayData.initializeData();
     public static final String DEFAULT_HOLIDAY_COMMENT = "Unnamed holiday";
+    // number of years of regions kept in the index of holidays, such as 50
+    // regions over 40 years
+    public static final int HOLIDAY_INDEX_SIZE = 2000;
+
+    // holiday data of every country, loaded on first use
+    private static volatile HolidayData holidayData = null;
+    // countries kept by preload(), null to look up any country
+    private static volatile Map<String, Country> preloadedCountries = null;
+
+    // lazily built index of holidays, keyed by region and year, the least
+    // recently used years being dropped
+    private static final LruCache<RegionYear, YearIndex> holidayIndex = new LruCache<>(HOLIDAY_INDEX_SIZE);
+
+    // precomputed holiday dates, looked up first when set
+    private static volatile HolidayTable holidayTable = null;
 
     Geolocation     geoloc          = null;
     
@@ -32,7 +49,160 @@ public class HolidayManager {
     }
 
     /**
-     * Checks if input defDate is a holiday in the {@link holidayData}.
+     * Get the holiday data of every country, loading it if it has not been
+     * loaded yet. The holiday data is only loaded when a holiday is first
+     * looked up, so that processes whose tags have no PH or SH never load it.
+     *
+     * @return the holiday data
+     */
+    public static HolidayData getHolidayData() {
+        HolidayData result = holidayData;
+        if (result == null) {
+            synchronized (HolidayManager.class) {
+                result = holidayData;
+                if (result == null) {
+                    result = HolidayData.initializeData();
+                    holidayData = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Load the holidays of a list of countries, and only keep those. The
+     * holiday data of the other countries is released, and holidays are then
+     * never found in them, which saves memory in processes serving a few
+     * countries.
+     * <p>
+     * This should be called before any evaluation. The compiled opening hours
+     * of {@link EvaluatorFactory#getDefault()} are dropped, but days already
+     * built by other {@link CompiledOpeningHours}, including those of an
+     * {@link OpeningHoursEvaluator}, keep the holidays found before.
+     *
+     * @param countries ISO 3166 2-letter country codes (e.g. "VN") of the
+     *      countries to keep, null to look up any country again, loading the
+     *      holiday data on first use
+     */
+    public static void preload(@Nullable Collection<String> countries) {
+        synchronized (HolidayManager.class) {
+            if (countries == null) {
+                preloadedCountries = null;
+            } else {
+                HolidayData data = getHolidayData();
+                Map<String, Country> kept = new HashMap<>();
+                for (String code : countries) {
+                    Country country = data.getCountry(code);
+                    if (country != null) {
+                        kept.put(code, country);
+                    }
+                }
+                preloadedCountries = Collections.unmodifiableMap(kept);
+                holidayData = null;
+            }
+            holidayIndex.clear();
+        }
+        EvaluatorFactory.getDefault().getCache().clear();
+    }
+
+    /**
+     * Get the holidays of a country, from the countries kept by
+     * {@link #preload(Collection)} if any, otherwise from the holiday data
+     *
+     * @param code ISO 3166 2-letter country code
+     * @return the Country, null if it has no holidays
+     */
+    @Nullable
+    static Country getCountry(String code) {
+        Map<String, Country> preloaded = preloadedCountries;
+        return (preloaded != null) ? preloaded.get(code) : getHolidayData().getCountry(code);
+    }
+
+    /**
+     * @return the holidays of every country that can be looked up, keyed by
+     *      country code
+     */
+    static Map<String, Country> getCountries() {
+        Map<String, Country> preloaded = preloadedCountries;
+        return (preloaded != null) ? preloaded : getHolidayData().getHolidays();
+    }
+
+    /**
+     * @return the holidays of the countries kept by
+     *      {@link #preload(Collection)}, keyed by country code, null if any
+     *      country can be looked up
+     */
+    @Nullable
+    static Map<String, Country> getPreloadedCountries() {
+        return preloadedCountries;
+    }
+
+    /**
+     * @return the precomputed holiday dates looked up before the holiday
+     *      data, null if none
+     */
+    @Nullable
+    public static HolidayTable getHolidayTable() {
+        return holidayTable;
+    }
+
+    /**
+     * Set the precomputed holiday dates to be looked up before the holiday
+     * data, see {@link HolidayTable#loadOrBuild}. Dates out of the years of
+     * the table, and countries the table was not built for, are still looked
+     * up in the holiday data.
+     * <p>
+     * As with {@link #preload(Collection)}, this should be called before any
+     * evaluation: only the compiled opening hours of
+     * {@link EvaluatorFactory#getDefault()} are dropped, other
+     * {@link CompiledOpeningHours} keep the days they have already built.
+     *
+     * @param table the precomputed holiday dates, null to only use the
+     *      holiday data
+     */
+    public static void setHolidayTable(@Nullable HolidayTable table) {
+        holidayTable = table;
+        EvaluatorFactory.getDefault().getCache().clear();
+    }
+
+    /**
+     * Find the holiday falling on a date, from the precomputed holiday dates
+     * if they cover its year and country, otherwise from the holiday data
+     *
+     * @param defDate date to check
+     * @param holidayRule the holiday to check
+     * @return the holiday found, null if the date is not a holiday
+     */
+    @Nullable
+    Match findHoliday(LocalDate defDate, ch.poole.openinghoursparser.Holiday holidayRule) {
+        HolidayTable table = holidayTable;
+        Map<String, Country> preloaded = preloadedCountries;
+        LocalDate offsetDate = DateManager.getOffsetDate(defDate, holidayRule.getOffset() * -1);
+        String code = geoloc.getCountry();
+        // a country left out by preload() has no holidays, even in the table
+        if (table != null && table.covers(offsetDate.getYear()) && table.containsCountry(code)
+                && (preloaded == null || preloaded.containsKey(code))) {
+            return table.find(code, geoloc.getSubRegion(), holidayRule.getType(), offsetDate);
+        }
+        Holiday holiday = processHoliday(defDate, holidayRule);
+        return (holiday != null) ? new Match(getHolidayComment(holiday)) : null;
+    }
+
+    /**
+     * Get the comment given by a holiday to the opening times of its day when
+     * its rule has none: its English name, or
+     * {@link #DEFAULT_HOLIDAY_COMMENT} if it has no name at all
+     *
+     * @param holiday a holiday
+     * @return the comment, null if the holiday has names but none in English
+     */
+    @Nullable
+    static String getHolidayComment(Holiday holiday) {
+        return (holiday.getName() != null) ? holiday.getName().get("en") : DEFAULT_HOLIDAY_COMMENT;
+    }
+
+    /**
+     * Checks if input defDate is a holiday in the holiday data, see {@link #getHolidayData()}.
      * 
      * @param defDate date to check
      * @param holidayRule name of the holiday to check
@@ -40,13 +210,13 @@ public class HolidayManager {
      */
     @Nullable
     public Holiday processHoliday(LocalDate defDate, ch.poole.openinghoursparser.Holiday holidayRule) {
-        Country country = holidayData.getCountry(geoloc.getCountry());
+        Country country = getCountry(geoloc.getCountry());
         if (country != null) {
             // apply offset and retrieve defining month and day
             LocalDate offsetDate = DateManager.getOffsetDate(defDate, holidayRule.getOffset() * -1);
 
             // check national holiday
-            Holiday nationalHoliday = processHolidayHelper(offsetDate, country, holidayRule.getType());
+            Holiday nationalHoliday = processHolidayHelper(offsetDate, geoloc.getCountry(), country, holidayRule.getType());
             if (nationalHoliday != null) {
                 return nationalHoliday;
             }
@@ -55,7 +225,8 @@ public class HolidayManager {
             if (geoloc.getSubRegion() != null) {
                 Country subRegion = getSubRegionFromCountry(country, geoloc.getSubRegion());
                 if (subRegion != null) {
-                    Holiday subRegionHoliday = processHolidayHelper(offsetDate, subRegion, holidayRule.getType());
+                    Holiday subRegionHoliday = processHolidayHelper(offsetDate, geoloc.getCountry() + "/" + geoloc.getSubRegion(),
+                                                                   subRegion, holidayRule.getType());
                     if (subRegionHoliday != null) {
                         return subRegionHoliday;
                     }
@@ -75,7 +246,7 @@ public class HolidayManager {
      * @return {@link Country} of the subregion, null if none found
      */
     @Nullable
-    private Country getSubRegionFromCountry(Country c, String subRegionName) {
+    static Country getSubRegionFromCountry(Country c, String subRegionName) {
         if (subRegionName != null) {
             List<Map<String, Country>> toCheck = new ArrayList<>();
             toCheck.add(c.getStates());
@@ -93,25 +264,29 @@ public class HolidayManager {
      * {@link region}, w.r.t. to a {@link holidayRuleType}.
      * 
      * @param offsetDate date to check
+     * @param regionKey key of the region in the index of holidays
      * @param region {@link Country} to check
      * @param holidayRuleType {@link Type} of the holiday to check
      * @return the {@link Holiday} of that date if the date is a holiday, null otherwise
      */
     @Nullable
-    private Holiday processHolidayHelper(LocalDate offsetDate, Country region, Type holidayRuleType) {
-        int year = offsetDate.getYear();
-        List<Holiday> holidays = region.getDays();
-        for (Holiday h : holidays) {
-            int[] years = { year-1, year, year+1 };
-            for (int yearToCheck : years) {
-                LocalDate date = h.calculateDate(yearToCheck);
-                if (date != null && date.equals(offsetDate)
-                    && checkType(h, holidayRuleType)) {
-                    return h;
-                }
-            }
+    private Holiday processHolidayHelper(LocalDate offsetDate, String regionKey, Country region, Type holidayRuleType) {
+        RegionYear key = new RegionYear(regionKey, offsetDate.getYear());
+        YearIndex index = holidayIndex.get(key);
+        if (index == null) {
+            // racing threads may build the same year, which is harmless
+            index = new YearIndex(region, offsetDate.getYear());
+            holidayIndex.put(key, index);
         }
-        return null;
+        return index.get(offsetDate, holidayRuleType);
+    }
+
+    /**
+     * @return the index of holidays by region and year, mainly for its
+     *      statistics
+     */
+    static LruCache<?, YearIndex> getHolidayIndex() {
+        return holidayIndex;
     }
 
     /**
@@ -126,7 +301,7 @@ public class HolidayManager {
      * @param ruleType type of holiday rule, PH or SH
      * @return true if the holiday rule and found holiday match
      */
-    private boolean checkType(Holiday holiday, @Nonnull Type ruleType) {
+    static boolean checkType(Holiday holiday, @Nonnull Type ruleType) {
         String hType = holiday.getType();
         if (hType == null) {
             return ruleType.equals(Type.PH);
@@ -143,4 +318,96 @@ public class HolidayManager {
                 return false;
         }
     }
+
+    /**
+     * A holiday found on a date, reduced to the comment it gives to the
+     * opening times of that day
+     */
+    static final class Match {
+        @Nullable
+        final String comment;
+
+        Match(@Nullable String comment) {
+            this.comment = comment;
+        }
+    }
+
+    /**
+     * Key of the index of holidays: the key of a region, that is its country
+     * code optionally followed by "/" and a subregion, and a year
+     */
+    private static final class RegionYear {
+        final String    regionKey;
+        final int       year;
+
+        RegionYear(String regionKey, int year) {
+            this.regionKey = regionKey;
+            this.year = year;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof RegionYear)) {
+                return false;
+            }
+            RegionYear o = (RegionYear) other;
+            return year == o.year && regionKey.equals(o.regionKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * regionKey.hashCode() + year;
+        }
+    }
+
+    /**
+     * The holidays of a region falling in one year, by date and by type. A
+     * holiday is looked for in its definitions of the year before, the year
+     * itself and the year after, and when several holidays fall on the same
+     * date, the first one in the holiday data is kept.
+     */
+    static class YearIndex {
+        final Map<LocalDate, Holiday> publicHolidays;
+        final Map<LocalDate, Holiday> schoolHolidays;
+
+        YearIndex(Country region, int year) {
+            Map<LocalDate, Holiday> ph = new HashMap<>();
+            Map<LocalDate, Holiday> sh = new HashMap<>();
+            for (Holiday h : region.getDays()) {
+                boolean isPH = checkType(h, Type.PH);
+                boolean isSH = checkType(h, Type.SH);
+                if (!isPH && !isSH) {
+                    continue;
+                }
+                for (int yearToCheck = year-1; yearToCheck <= year+1; yearToCheck++) {
+                    LocalDate date = h.calculateDate(yearToCheck);
+                    if (date != null && date.getYear() == year) {
+                        if (isPH) {
+                            ph.putIfAbsent(date, h);
+                        }
+                        if (isSH) {
+                            sh.putIfAbsent(date, h);
+                        }
+                    }
+                }
+            }
+            publicHolidays = (ph.isEmpty()) ? Collections.emptyMap() : ph;
+            schoolHolidays = (sh.isEmpty()) ? Collections.emptyMap() : sh;
+        }
+
+        @Nullable
+        Holiday get(LocalDate date, Type type) {
+            switch (type) {
+                case PH:
+                    return publicHolidays.get(date);
+                case SH:
+                    return schoolHolidays.get(date);
+                default:
+                    return null;
+            }
+        }
+    }
 }
@@ -0,0 +1,449 @@
+package openinghoursevaluator;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.poole.openinghoursparser.Holiday.Type;
+import io.github.goodudetheboy.worldholidaydates.holidaydata.Country;
+import io.github.goodudetheboy.worldholidaydates.holidaydata.Holiday;
+
+/**
+ * Precomputed dates of the public and school holidays of every country and
+ * subregion of the holiday data, over a window of years, see
+ * {@link HolidayManager#setHolidayTable(HolidayTable)}.
+ * <p>
+ * The dates of each region and type of holiday are a sorted array of epoch
+ * days, with the comment each holiday gives to its day in a parallel array
+ * of string IDs, so that a lookup is a binary search instead of calculating
+ * the dates of every holiday of the region. A table is written once to a
+ * local cache file and memory mapped on the next starts, see
+ * {@link #loadOrBuild(Path, int, int)}; only its directory of regions is read
+ * into the heap.
+ * <p>
+ * The file is little endian, made of a header (magic "OHHT", version, first
+ * and last year, number of regions, dates, strings and countries, 4 bytes
+ * each), the regions (ID of the key of the region, that is its country code
+ * optionally followed by "/" and its subregion, type of holiday, 0 for PH and
+ * 1 for SH, first date and number of dates, 4 bytes each), the string IDs of
+ * the country codes the table was built for, none if the number of countries
+ * is -1 for every country of the holiday data, the dates as epoch days, the
+ * string IDs of their comments, -1 for null, then the strings, each as its
+ * length in bytes followed by its UTF-8 bytes.
+ * <p>
+ * The table is not updated with the holiday data, so the cache file should be
+ * deleted when updating it. Countries the table was not built for, such as
+ * those left out by {@link HolidayManager#preload} when it was built, are
+ * looked up in the holiday data. Instances of this class are immutable and
+ * thread-safe.
+ */
+public final class HolidayTable {
+    // "OHHT" in ASCII
+    public static final int     MAGIC           = 0x5448484F;
+    public static final int     VERSION         = 2;
+
+    private static final int    HEADER_SIZE     = 32;
+    private static final int    REGION_SIZE     = 16;
+    private static final int    NONE            = -1;
+    // number of countries of a table built for every country
+    private static final int    ALL_COUNTRIES   = -1;
+
+    private final int           fromYear;
+    private final int           toYear;
+    // codes of the countries of the table, null for every country
+    private final Set<String>   countries;
+    // index in the region directory, keyed by region key and type
+    private final Map<String, int[]> regions;
+    private final IntBuffer     days;
+    private final IntBuffer     comments;
+    private final String[]      strings;
+
+    /** Use {@link #build(int, int)} or {@link #read(Path)} */
+    private HolidayTable(int fromYear, int toYear, @Nullable Set<String> countries, Map<String, int[]> regions,
+                         IntBuffer days, IntBuffer comments, String[] strings) {
+        this.fromYear = fromYear;
+        this.toYear = toYear;
+        this.countries = (countries != null) ? Collections.unmodifiableSet(new TreeSet<>(countries)) : null;
+        this.regions = regions;
+        this.days = days;
+        this.comments = comments;
+        this.strings = strings;
+    }
+
+    /**
+     * Read the table of a cache file if it covers the input years and the
+     * countries currently kept by {@link HolidayManager#preload}, otherwise
+     * build it and write it to the cache file, replacing it
+     *
+     * @param cacheFile path of the cache file
+     * @param fromYear first year of the table
+     * @param toYear last year of the table
+     * @return the table
+     * @throws IOException if the cache file can't be written
+     */
+    public static HolidayTable loadOrBuild(@Nonnull Path cacheFile, int fromYear, int toYear) throws IOException {
+        if (Files.exists(cacheFile)) {
+            try {
+                HolidayTable table = read(cacheFile);
+                if (table.fromYear == fromYear && table.toYear == toYear
+                        && table.hasCountries(HolidayManager.getPreloadedCountries())) {
+                    return table;
+                }
+            } catch (IOException e) {
+                // outdated or damaged, built again below
+            }
+        }
+        HolidayTable table = build(fromYear, toYear);
+        Path temporary = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), "holidays", ".tmp");
+        try {
+            table.write(temporary);
+            Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return table;
+    }
+
+    /**
+     * Build the table of every country and subregion of the holiday data, or
+     * of the countries kept by {@link HolidayManager#preload}, which the table
+     * records. Holidays are looked for the same way as in
+     * {@link HolidayManager#processHoliday}.
+     *
+     * @param fromYear first year of the table
+     * @param toYear last year of the table
+     * @return the table, kept in the heap
+     */
+    public static HolidayTable build(int fromYear, int toYear) {
+        if (fromYear > toYear) {
+            throw new IllegalArgumentException("First year " + fromYear + " is after last year " + toYear);
+        }
+        Map<String, int[]> regions = new HashMap<>();
+        List<Integer> dayList = new ArrayList<>();
+        List<Integer> commentList = new ArrayList<>();
+        List<String> stringList = new ArrayList<>();
+        Map<String, Integer> stringIds = new HashMap<>();
+        Map<String, Country> preloaded = HolidayManager.getPreloadedCountries();
+        Map<String, Country> countries = (preloaded != null) ? preloaded : HolidayManager.getCountries();
+        for (Map.Entry<String, Country> country : countries.entrySet()) {
+            Map<String, Country> toExpand = new LinkedHashMap<>();
+            toExpand.put(country.getKey(), country.getValue());
+            for (Map<String, Country> subRegions : getSubRegions(country.getValue())) {
+                for (String subRegion : subRegions.keySet()) {
+                    // same as the subregion found during evaluation
+                    toExpand.put(country.getKey() + "/" + subRegion,
+                                 HolidayManager.getSubRegionFromCountry(country.getValue(), subRegion));
+                }
+            }
+            for (Map.Entry<String, Country> region : toExpand.entrySet()) {
+                TreeMap<LocalDate, Holiday> ph = new TreeMap<>();
+                TreeMap<LocalDate, Holiday> sh = new TreeMap<>();
+                for (int year=fromYear; year <= toYear; year++) {
+                    HolidayManager.YearIndex index = new HolidayManager.YearIndex(region.getValue(), year);
+                    ph.putAll(index.publicHolidays);
+                    sh.putAll(index.schoolHolidays);
+                }
+                Type[] types = { Type.PH, Type.SH };
+                List<TreeMap<LocalDate, Holiday>> holidays = new ArrayList<>();
+                holidays.add(ph);
+                holidays.add(sh);
+                for (int i=0; i < types.length; i++) {
+                    if (holidays.get(i).isEmpty()) {
+                        continue;
+                    }
+                    regions.put(getKey(region.getKey(), types[i]),
+                                new int[] { dayList.size(), holidays.get(i).size() });
+                    for (Map.Entry<LocalDate, Holiday> holiday : holidays.get(i).entrySet()) {
+                        dayList.add((int) holiday.getKey().toEpochDay());
+                        String comment = HolidayManager.getHolidayComment(holiday.getValue());
+                        Integer id = NONE;
+                        if (comment != null) {
+                            id = stringIds.get(comment);
+                            if (id == null) {
+                                id = stringList.size();
+                                stringList.add(comment);
+                                stringIds.put(comment, id);
+                            }
+                        }
+                        commentList.add(id);
+                    }
+                }
+            }
+        }
+        IntBuffer days = IntBuffer.allocate(dayList.size());
+        IntBuffer comments = IntBuffer.allocate(commentList.size());
+        for (int i=0; i < dayList.size(); i++) {
+            days.put(i, dayList.get(i));
+            comments.put(i, commentList.get(i));
+        }
+        Set<String> codes = (preloaded != null) ? preloaded.keySet() : null;
+        return new HolidayTable(fromYear, toYear, codes, regions, days, comments, stringList.toArray(new String[0]));
+    }
+
+    /** Helper for build(), get the maps of subregions of a country */
+    private static List<Map<String, Country>> getSubRegions(Country country) {
+        List<Map<String, Country>> result = new ArrayList<>();
+        if (country.getStates() != null) {
+            result.add(country.getStates());
+        }
+        if (country.getRegions() != null) {
+            result.add(country.getRegions());
+        }
+        return result;
+    }
+
+    /** Get the key of the dates of a region and type in the directory */
+    private static String getKey(String regionKey, Type type) {
+        return type.name() + ":" + regionKey;
+    }
+
+    /**
+     * @param year a year
+     * @return true if the year is in the window of this table
+     */
+    public boolean covers(int year) {
+        return year >= fromYear && year <= toYear;
+    }
+
+    /**
+     * @param code ISO 3166 2-letter country code
+     * @return true if this table was built for the country, that is for
+     *      every country, or for countries kept by
+     *      {@link HolidayManager#preload} including it
+     */
+    public boolean containsCountry(String code) {
+        return countries == null || countries.contains(code);
+    }
+
+    /**
+     * @return the codes of the countries this table was built for, null if
+     *      it was built for every country of the holiday data
+     */
+    @Nullable
+    public Set<String> getCountries() {
+        return countries;
+    }
+
+    /** Helper for loadOrBuild(), check that this table has the countries kept by preload() */
+    private boolean hasCountries(@Nullable Map<String, Country> preloaded) {
+        return (preloaded == null) ? countries == null
+                                   : countries != null && countries.equals(preloaded.keySet());
+    }
+
+    /**
+     * @return the first year of this table
+     */
+    public int getFromYear() {
+        return fromYear;
+    }
+
+    /**
+     * @return the last year of this table
+     */
+    public int getToYear() {
+        return toYear;
+    }
+
+    /**
+     * Find a holiday on a date, as a national holiday, then as a holiday of
+     * the subregion. The date must be covered by this table.
+     *
+     * @param country ISO 3166 2-letter country code
+     * @param subRegion a subregion shortened name, or null
+     * @param type the type of holiday
+     * @param date the date to check, without offset
+     * @return the holiday found, null if the date is not a holiday
+     */
+    @Nullable
+    HolidayManager.Match find(String country, @Nullable String subRegion, Type type, LocalDate date) {
+        HolidayManager.Match match = find(getKey(country, type), date);
+        if (match == null && subRegion != null) {
+            match = find(getKey(country + "/" + subRegion, type), date);
+        }
+        return match;
+    }
+
+    /** Helper for find(), binary search the dates of a region */
+    @Nullable
+    private HolidayManager.Match find(String key, LocalDate date) {
+        int[] region = regions.get(key);
+        if (region == null) {
+            return null;
+        }
+        int epochDay = (int) date.toEpochDay();
+        int low = region[0];
+        int high = region[0] + region[1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int check = days.get(mid);
+            if (epochDay < check) {
+                high = mid - 1;
+            } else if (epochDay > check) {
+                low = mid + 1;
+            } else {
+                int comment = comments.get(mid);
+                return new HolidayManager.Match((comment == NONE) ? null : strings[comment]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write this table to a binary file, replacing it if it exists
+     *
+     * @param path path of the file
+     * @throws IOException if the file can't be written
+     */
+    public void write(@Nonnull Path path) throws IOException {
+        List<byte[]> encoded = new ArrayList<>(strings.length + regions.size());
+        Map<String, Integer> keyIds = new HashMap<>();
+        int stringBytes = 0;
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            stringBytes += Integer.BYTES + bytes.length;
+        }
+        for (String key : regions.keySet()) {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            keyIds.put(key, encoded.size());
+            encoded.add(bytes);
+            stringBytes += Integer.BYTES + bytes.length;
+        }
+        int countryCount = (countries != null) ? countries.size() : ALL_COUNTRIES;
+        int firstCountryId = encoded.size();
+        if (countries != null) {
+            for (String code : countries) {
+                byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                stringBytes += Integer.BYTES + bytes.length;
+            }
+        }
+        int dayCount = days.limit();
+        ByteBuffer file = ByteBuffer.allocate(HEADER_SIZE + regions.size() * REGION_SIZE
+                                              + Math.max(countryCount, 0) * Integer.BYTES
+                                              + 2 * dayCount * Integer.BYTES + stringBytes)
+                                    .order(ByteOrder.LITTLE_ENDIAN);
+        file.putInt(MAGIC).putInt(VERSION).putInt(fromYear).putInt(toYear).putInt(regions.size())
+            .putInt(dayCount).putInt(encoded.size()).putInt(countryCount);
+        for (Map.Entry<String, int[]> region : regions.entrySet()) {
+            // the type is part of the key, also kept apart for other readers
+            int type = region.getKey().startsWith(Type.SH.name()) ? 1 : 0;
+            file.putInt(keyIds.get(region.getKey())).putInt(type)
+                .putInt(region.getValue()[0]).putInt(region.getValue()[1]);
+        }
+        for (int i=0; i < countryCount; i++) {
+            file.putInt(firstCountryId + i);
+        }
+        for (int i=0; i < dayCount; i++) {
+            file.putInt(days.get(i));
+        }
+        for (int i=0; i < dayCount; i++) {
+            file.putInt(comments.get(i));
+        }
+        for (byte[] bytes : encoded) {
+            file.putInt(bytes.length).put(bytes);
+        }
+        // Buffer's own flip(), position(int) and limit(int) also exist on Java 8
+        ((Buffer) file).flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (file.hasRemaining()) {
+                channel.write(file);
+            }
+        }
+    }
+
+    /**
+     * Read a table from a binary file written by {@link #write(Path)}. The
+     * file is memory mapped and its dates are read in place.
+     *
+     * @param path path of the file
+     * @return the table
+     * @throws IOException if the file can't be read or is not in this format
+     */
+    public static HolidayTable read(@Nonnull Path path) throws IOException {
+        ByteBuffer file;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (file.remaining() < HEADER_SIZE || file.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a file of holiday dates");
+        }
+        if (file.getInt(4) != VERSION) {
+            throw new IOException("Unsupported version " + file.getInt(4) + " of holiday dates in " + path);
+        }
+        int fromYear = file.getInt(8);
+        int toYear = file.getInt(12);
+        int regionCount = file.getInt(16);
+        int dayCount = file.getInt(20);
+        int stringCount = file.getInt(24);
+        int countryCount = file.getInt(28);
+        long countriesStart = HEADER_SIZE + (long) regionCount * REGION_SIZE;
+        long stringsStart = countriesStart + Math.max(countryCount, 0) * (long) Integer.BYTES
+                            + 2L * dayCount * Integer.BYTES;
+        if (regionCount < 0 || dayCount < 0 || stringCount < 0 || countryCount < ALL_COUNTRIES
+                || stringsStart > file.limit()) {
+            throw new IOException("Truncated holiday dates in " + path);
+        }
+        int position = (int) countriesStart + Math.max(countryCount, 0) * Integer.BYTES;
+        IntBuffer days = slice(file, position, dayCount);
+        position += dayCount * Integer.BYTES;
+        IntBuffer comments = slice(file, position, dayCount);
+        position += dayCount * Integer.BYTES;
+        String[] strings = new String[stringCount];
+        for (int i=0; i < stringCount; i++) {
+            if (position + Integer.BYTES > file.limit()
+                    || file.getInt(position) < 0
+                    || position + Integer.BYTES + file.getInt(position) > file.limit()) {
+                throw new IOException("Truncated holiday dates in " + path);
+            }
+            byte[] bytes = new byte[file.getInt(position)];
+            ByteBuffer string = file.duplicate();
+            ((Buffer) string).position(position + Integer.BYTES);
+            string.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            position += Integer.BYTES + bytes.length;
+        }
+        Map<String, int[]> regions = new HashMap<>();
+        for (int i=0; i < regionCount; i++) {
+            int base = HEADER_SIZE + i * REGION_SIZE;
+            regions.put(strings[file.getInt(base)], new int[] { file.getInt(base + 8), file.getInt(base + 12) });
+        }
+        Set<String> countries = null;
+        if (countryCount != ALL_COUNTRIES) {
+            countries = new TreeSet<>();
+            for (int i=0; i < countryCount; i++) {
+                countries.add(strings[file.getInt((int) countriesStart + i * Integer.BYTES)]);
+            }
+        }
+        return new HolidayTable(fromYear, toYear, countries, regions, days, comments, strings);
+    }
+
+    /** Helper for read(), get a section of ints of the mapped file */
+    private static IntBuffer slice(ByteBuffer file, int position, int length) {
+        ByteBuffer section = file.duplicate();
+        ((Buffer) section).position(position).limit(position + length * Integer.BYTES);
+        return section.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+}
@@ -0,0 +1,185 @@
+package openinghoursevaluator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nullable;
+
+/**
+ * A small, thread-safe cache with a bounded number of entries, evicting the
+ * least recently used entry when full, and optionally expiring entries after
+ * a fixed time-to-live. Hit, miss and eviction counts are kept so the cache
+ * can be monitored.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ */
+public class LruCache<K, V> {
+    private final int           maxSize;
+    private final long          ttlNanos;
+    private final LongSupplier  ticker;
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    private long    hitCount        = 0;
+    private long    missCount       = 0;
+    private long    evictionCount   = 0;
+
+    /**
+     * Constructor for a LruCache without expiry
+     *
+     * @param maxSize maximum number of entries, 0 to disable caching
+     */
+    public LruCache(int maxSize) {
+        this(maxSize, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructor for a LruCache whose entries expire after a time-to-live
+     *
+     * @param maxSize maximum number of entries, 0 to disable caching
+     * @param ttl time-to-live of an entry, 0 for no expiry
+     * @param unit the unit of ttl
+     */
+    public LruCache(int maxSize, long ttl, TimeUnit unit) {
+        this(maxSize, unit.toNanos(ttl), System::nanoTime);
+    }
+
+    /**
+     * Constructor for a LruCache with a custom time source, used in testing
+     *
+     * @param maxSize maximum number of entries, 0 to disable caching
+     * @param ttlNanos time-to-live of an entry in nanoseconds, 0 for no expiry
+     * @param ticker time source in nanoseconds
+     */
+    LruCache(int maxSize, long ttlNanos, LongSupplier ticker) {
+        if (maxSize < 0 || ttlNanos < 0) {
+            throw new IllegalArgumentException("Cache size and time-to-live must not be negative");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlNanos;
+        this.ticker = ticker;
+        this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the value stored with the input key
+     *
+     * @param key the key
+     * @return the value, null if absent or expired
+     */
+    @Nullable
+    public synchronized V get(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry != null && ttlNanos > 0 && ticker.getAsLong() - entry.created >= ttlNanos) {
+            map.remove(key);
+            evictionCount++;
+            entry = null;
+        }
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * Store a value with the input key, evicting the least recently used
+     * entry if the cache is full
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public synchronized void put(K key, V value) {
+        if (maxSize == 0) {
+            return;
+        }
+        map.put(key, new Entry<>(value, ticker.getAsLong()));
+    }
+
+    /**
+     * Remove all entries. Counters are not reset.
+     */
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    /**
+     * @return the number of entries currently stored, including expired
+     *      entries not yet removed
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * @return the maximum number of entries
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of lookups that found a value
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of lookups that did not find a value
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of entries removed because the cache was full or
+     *      the entry had expired
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return ratio of hits over all lookups, 0 if there was no lookup
+     */
+    public synchronized double getHitRate() {
+        long total = hitCount + missCount;
+        return (total == 0) ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "size=" + map.size() + "/" + maxSize
+            + ", hits=" + hitCount
+            + ", misses=" + missCount
+            + ", evictions=" + evictionCount;
+    }
+
+    /**
+     * A stored value with the time it was stored
+     */
+    private static class Entry<V> {
+        final V     value;
+        final long  created;
+
+        Entry(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+}
@@ -25,6 +25,11 @@ public class MonthRule {
     List<Rule>  rules       = null;
     List<Week>  weekStorage = null;
     Geolocation    geolocation    = null;
+    // the plan of each Rule, in the same order
+    List<RulePlan>  plans   = null;
+    // created on the first DateRange, a DateManager keeps state while
+    // processing
+    DateManager dateManager = null;
 
     public MonthRule() {
         // nothing here
@@ -37,8 +42,21 @@ public class MonthRule {
      * @param geolocation the geolocation
      */
     public MonthRule(List<Rule> rules, @Nonnull Geolocation geolocation) {
+        this(rules, RulePlan.of(rules), geolocation);
+    }
+
+    /**
+     * Constructor to create a MonthRule with a list of rules whose plans
+     * were made beforehand, see {@link RulePlan#of(List)}
+     * 
+     * @param rules the list of Rules
+     * @param plans the plan of each Rule
+     * @param geolocation the geolocation
+     */
+    MonthRule(List<Rule> rules, List<RulePlan> plans, @Nonnull Geolocation geolocation) {
         weekStorage = new ArrayList<>();
         this.rules = rules;
+        this.plans = plans;
         this.geolocation = geolocation;
     }
 
@@ -84,6 +102,7 @@ public class MonthRule {
      */
     public void setRules(List<Rule> rules) {
         this.rules = rules;
+        this.plans = RulePlan.of(rules);
     }
 
     /**
@@ -105,10 +124,10 @@ public class MonthRule {
     public void buildWeek(LocalDateTime time)
             throws OpeningHoursEvaluationException {
         populate(time);
-        for (Rule rule : rules) {
-            simulateSpill(weekStorage.get(0), rule);
+        for (RulePlan plan : plans) {
+            simulateSpill(weekStorage.get(0), plan);
             for (Week week : weekStorage) {
-                update(week, rule);
+                update(week, plan);
             }
         }
     }
@@ -126,43 +145,48 @@ public class MonthRule {
             throws OpeningHoursEvaluationException {
         LocalDate date = time.toLocalDate();
         Week oneDay = new Week(date, Week.convertWeekDay(date.getDayOfWeek()), geolocation);
-        for (Rule rule : rules) {
-            simulateSpill(oneDay, rule);
-            update(oneDay, rule);
+        for (RulePlan plan : plans) {
+            simulateSpill(oneDay, plan);
+            update(oneDay, plan);
         }
         oneDay.applyPreviousSpill();
         return oneDay;
     }
 
     /**
-     * Helper function for build().
+     * Helper function for build(). Start from the first stage needed by the
+     * Rule of the plan, skipping the others
      * @throws OpeningHoursEvaluationException
      */
-    private void update(Week week, Rule rule)
+    private void update(Week week, RulePlan plan)
             throws OpeningHoursEvaluationException {
-        updateWithYearRange(rule, week);
+        Rule rule = plan.getRule();
+        if (plan.has(RulePlan.YEARS)) {
+            updateWithYearRange(plan, week);
+        } else if (plan.has(RulePlan.WEEKS)) {
+            updateWithWeekRange(plan, rule, week);
+        } else if (plan.has(RulePlan.DATES)) {
+            updateWithDateRange(plan, rule, week);
+        } else {
+            week.build(rule, plan.getWeekdays(), null);
+        }
     }
 
     /** 
      * Helper function for update(). Check for YearRange and then build
      * accordingly
      */
-    private void updateWithYearRange(Rule rule, Week week)
+    private void updateWithYearRange(RulePlan plan, Week week)
             throws OpeningHoursEvaluationException {
-        if (rule.getYears() != null) {
-            YearManager yearManager = new YearManager();
-            for (YearRange yearRange : rule.getYears()) {
-                // if found applicable YearRange move to check for update with
-                // WeekRange right away
-                if (yearManager.processYearRange(yearRange, week)) {
-                    // Check of open-ended YearRange to fill accordingly
-                    Rule processed = (yearRange.isOpenEnded()) ? processOpenEndRule(rule) : rule;
-                    updateWithWeekRange(processed, week);
-                    return;
-                }
+        for (YearRange yearRange : plan.getRule().getYears()) {
+            // if found applicable YearRange move to check for update with
+            // WeekRange right away
+            if (YearManager.SHARED.processYearRange(yearRange, week)) {
+                // Check of open-ended YearRange to fill accordingly
+                Rule processed = (yearRange.isOpenEnded()) ? plan.getOpenEndRule() : plan.getRule();
+                updateWithWeekRange(plan, processed, week);
+                return;
             }
-        } else {
-            updateWithWeekRange(rule, week);
         }
     }
 
@@ -170,20 +194,19 @@ public class MonthRule {
      * Helper function for updateWithYearRange(). Check for WeekRange and then
      * build accordingly
      */
-    private void updateWithWeekRange(Rule rule, Week week)
+    private void updateWithWeekRange(RulePlan plan, Rule rule, Week week)
             throws OpeningHoursEvaluationException {
-        if (rule.getWeeks() != null) {
-            WeekManager weekManager = new WeekManager();
+        if (plan.has(RulePlan.WEEKS)) {
             for (WeekRange weekRange : rule.getWeeks()) {
                 // if found applicable WeekRange move to check for update with
                 // DateRange right away
-                if (weekManager.processWeekRange(weekRange, week)) {
-                    updateWithDateRange(rule, week);
+                if (WeekManager.SHARED.processWeekRange(weekRange, week)) {
+                    updateWithDateRange(plan, rule, week);
                     return;
                 }
             }
         } else {
-            updateWithDateRange(rule, week);
+            updateWithDateRange(plan, rule, week);
         }
     }
 
@@ -191,17 +214,19 @@ public class MonthRule {
      * Helper function for updateWithWeekRange(). Check for DateRange and then
      * build accordingly
      */
-    private void updateWithDateRange(Rule rule, Week week)
+    private void updateWithDateRange(RulePlan plan, Rule rule, Week week)
             throws OpeningHoursEvaluationException {
-        if (rule.getDates() != null) {
-            DateManager dateManager = new DateManager();
+        if (plan.has(RulePlan.DATES)) {
+            if (dateManager == null) {
+                dateManager = new DateManager();
+            }
             for (DateRange dateRange : rule.getDates()) {
                 List<List<LocalDate>> restrictions
                     = dateManager.processDateRange(dateRange, week);
-                resProcess(restrictions, rule, week, dateRange);
+                resProcess(restrictions, plan, rule, week, dateRange);
             }
         } else {
-            week.build(rule);
+            week.build(rule, plan.getWeekdays(), null);
         }
     }
 
@@ -211,8 +236,8 @@ public class MonthRule {
      * @throws OpeningHoursEvaluationException
      * 
      */
-    private void resProcess(List<List<LocalDate>> restrictions, Rule rule,
-                            Week week, DateRange dateRange)
+    private void resProcess(List<List<LocalDate>> restrictions, RulePlan plan,
+                            Rule rule, Week week, DateRange dateRange)
             throws OpeningHoursEvaluationException {
         // get LocalDate of start and end of input Week
         LocalDate startWDR = week.getStartWeekDayRule().getDefDate();
@@ -235,8 +260,8 @@ public class MonthRule {
 
                 // check for open ended date range
                 Rule processed = (DateManager.isOpenEndDateRange(dateRange))
-                            ? processOpenEndRule(rule) : rule;
-                week.build(processed, restriction);
+                            ? plan.getOpenEndRule() : rule;
+                week.build(processed, plan.getWeekdays(), restriction);
             }
         }
     }
@@ -250,7 +275,7 @@ public class MonthRule {
      * @param rule Rule with open end
      * @return a copy of input Rule but with extra adjustment
      */
-    private Rule processOpenEndRule(Rule rule) {
+    static Rule processOpenEndRule(Rule rule) {
         Rule openEndRule = rule.copy();
         if (openEndRule.getModifier() != null) {
             RuleModifier modifier = openEndRule.getModifier();
@@ -271,16 +296,33 @@ public class MonthRule {
      * week
      * 
      * @param week a Week to be simulated
-     * @param rule a Rule to be applied
+     * @param plan the plan of a Rule to be applied
      * @throws OpeningHoursEvaluationException
      */
-    private void simulateSpill(Week week, Rule rule) 
+    private void simulateSpill(Week week, RulePlan plan) 
             throws OpeningHoursEvaluationException {
         Week dayBeforeWeek = new Week(week.getDayBefore(), geolocation);
-        update(dayBeforeWeek, rule);
+        update(dayBeforeWeek, plan);
     }
 
 
+    /**
+     * Clean the Week built by {@link #buildWeek(LocalDateTime)} and take an
+     * immutable snapshot of each of its days, from Monday to Sunday
+     * 
+     * @return the DaySchedule of each day of the built Week
+     */
+    DaySchedule[] snapshotWeek() {
+        DaySchedule[] result = new DaySchedule[7];
+        int i = 0;
+        for (Week week : weekStorage) {
+            for (DaySchedule day : week.getDaySchedules()) {
+                result[i++] = day;
+            }
+        }
+        return result;
+    }
+
     /**
      * Evaluate the stored OH string with a time to see if it's opening or closed
      * 
@@ -1,9 +1,12 @@
 package openinghoursevaluator;
 
 import java.io.ByteArrayInputStream;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Locale;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
 
 import ch.poole.openinghoursparser.OpeningHoursParseException;
 import ch.poole.openinghoursparser.OpeningHoursParser;
@@ -11,7 +14,12 @@ import ch.poole.openinghoursparser.Rule;
 
 /**
  * Implementation of the OpeningHoursEvaluator
- *
+ * <p>
+ * An evaluator can be changed after construction through its setters, and is
+ * not thread-safe. To share an opening hours tag between threads, use the
+ * immutable {@link CompiledOpeningHours} instead, either from
+ * {@link #getCompiledOpeningHours()} or from
+ * {@link CompiledOpeningHours#builder()}.
  */
 public class OpeningHoursEvaluator {
     // List to store rules from the parser
@@ -20,6 +28,12 @@ public class OpeningHoursEvaluator {
     boolean         isStrict        = false;
     TimeTraveller   timeTraveller   = null;
 
+    // compiled form of the rules and geolocation, used during evaluation
+    CompiledOpeningHours compiled   = null;
+    // options for the cache of built days of the compiled form
+    int             cacheSize       = CompiledOpeningHours.DEFAULT_CACHE_SIZE;
+    long            cacheTtlNanos   = 0;
+
     // geocoding, set default to default geolocation
     Geolocation     geolocation     = new Geolocation();
 
@@ -62,14 +76,12 @@ public class OpeningHoursEvaluator {
      */
     public OpeningHoursEvaluator(String openingHours, boolean isStrict, double lat, double lng, String country)
             throws OpeningHoursParseException {
-        this(openingHours, isStrict);
-        geolocation = new Geolocation(lat, lng, country);
+        this(openingHours, isStrict, new Geolocation(lat, lng, country));
     }
 
     public OpeningHoursEvaluator(String openingHours, boolean isStrict, double lat, double lng, Locale locale)
             throws OpeningHoursParseException {
-        this(openingHours, isStrict);
-        geolocation = new Geolocation(lat, lng, locale);
+        this(openingHours, isStrict, new Geolocation(lat, lng, locale));
     }
 
 
@@ -84,8 +96,10 @@ public class OpeningHoursEvaluator {
      */
     public OpeningHoursEvaluator(String openingHours, boolean isStrict, Geolocation geolocation)
             throws OpeningHoursParseException {
-        this(openingHours, isStrict);
+        this.isStrict = isStrict;
         this.geolocation = geolocation;
+        // parsed and compiled once, with the final geolocation
+        setOpeningHoursTag(openingHours);
     }
 
     /**
@@ -116,6 +130,14 @@ public class OpeningHoursEvaluator {
         return geolocation;
     }
 
+    /**
+     * @return the compiled form of the stored Rules and geolocation, which
+     *      can be shared between threads
+     */
+    public CompiledOpeningHours getCompiledOpeningHours() {
+        return compiled;
+    }
+
     /**
      * Set the current opening hours tag of this evaluator. This will also
      * reset the list of Rule stored in this evaluator, and any subsequent
@@ -140,7 +162,41 @@ public class OpeningHoursEvaluator {
      */
     public void setRules(List<Rule> rules) {
         this.rules = rules;
-        timeTraveller = new TimeTraveller(rules, geolocation);
+        compile();
+    }
+
+    /**
+     * Set the geolocation of this evaluator, and any subsequent use of this
+     * evaluator will rely on this geolocation. Changes made to the geolocation
+     * after this call are not picked up until it is set again.
+     * 
+     * @param geolocation a {@link Geolocation} to be set
+     */
+    public void setGeolocation(Geolocation geolocation) {
+        this.geolocation = geolocation;
+        compile();
+    }
+
+    /**
+     * Set the options of the cache of built days of this evaluator. Any day
+     * already cached is dropped.
+     *
+     * @param cacheSize maximum number of built days kept, 0 to disable caching
+     * @param ttl time after which a built day is rebuilt, 0 for never
+     * @param unit the unit of ttl
+     */
+    public void setCacheOptions(int cacheSize, long ttl, TimeUnit unit) {
+        this.cacheSize = cacheSize;
+        this.cacheTtlNanos = unit.toNanos(ttl);
+        compile();
+    }
+
+    /**
+     * Compile the stored Rules and geolocation, used whenever either is reset
+     */
+    private void compile() {
+        compiled = new CompiledOpeningHours(rules, geolocation, cacheSize, cacheTtlNanos, TimeUnit.NANOSECONDS);
+        timeTraveller = new TimeTraveller(compiled);
     }
 
     /**
@@ -166,8 +222,7 @@ public class OpeningHoursEvaluator {
      */
     public Result evaluate(LocalDateTime inputTime)
             throws OpeningHoursEvaluationException {
-        MonthRule monthRule = new MonthRule(rules, geolocation);
-        return monthRule.checkStatus(inputTime);
+        return compiled.evaluate(inputTime);
     }
 
     /**
@@ -194,7 +249,7 @@ public class OpeningHoursEvaluator {
      */
     public Status checkStatus(LocalDateTime inputTime)
             throws OpeningHoursEvaluationException {
-        return evaluate(inputTime).getStatus();
+        return compiled.checkStatus(inputTime);
     }
 
     /**
@@ -210,6 +265,65 @@ public class OpeningHoursEvaluator {
         return checkStatus(LocalDateTime.parse(inputTimeString));
     }
 
+    /**
+     * Get the Status of the current opening hours tag at a time given in
+     * minutes since 1970-01-01T00:00, without allocating anything once the day
+     * has been built. See {@link CompiledOpeningHours#checkStatusFast(long)}
+     * 
+     * @param epochMinute the local time to be checked, in minutes since
+     *      1970-01-01T00:00
+     * @return a Status instance
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public Status checkStatusFast(long epochMinute)
+            throws OpeningHoursEvaluationException {
+        return compiled.checkStatusFast(epochMinute);
+    }
+
+    /**
+     * Get the Status at each of the input times with the stored opening hours.
+     * This is much faster than calling {@link #checkStatus(LocalDateTime)}
+     * for each time, since each week needed is built only once.
+     * 
+     * @param inputTimes the times to be checked
+     * @return the Status at each input time, in the order of the set
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public Status[] evaluateAll(SortedSet<LocalDateTime> inputTimes)
+            throws OpeningHoursEvaluationException {
+        return compiled.evaluateAll(inputTimes);
+    }
+
+    /**
+     * Get the Status at regular steps of a range of time with the stored
+     * opening hours, for example every 15 minutes of the next 7 days
+     * 
+     * @param from start of the range, inclusive
+     * @param to end of the range, exclusive
+     * @param step time between two checked times, must be positive
+     * @return the Status at from, from + step, from + 2*step, ... before to
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public Status[] evaluateAll(LocalDateTime from, LocalDateTime to, Duration step)
+            throws OpeningHoursEvaluationException {
+        return compiled.evaluateAll(from, to, step);
+    }
+
+    /**
+     * Get the timeline of a range of time with the stored opening hours, as
+     * consecutive segments in which the Status and comment do not change,
+     * for example to draw a weekly opening chart
+     * 
+     * @param from start of the range, inclusive
+     * @param to end of the range, exclusive
+     * @return the segments covering the range, in order
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public List<TimelineSegment> getTimeline(LocalDateTime from, LocalDateTime to)
+            throws OpeningHoursEvaluationException {
+        return compiled.getTimeline(from, to);
+    }
+
     /**
      * Return next differing event of the input time (status different
      * from status of the evaluation of inputTime against the stored rules).
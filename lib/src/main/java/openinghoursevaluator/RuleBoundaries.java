@@ -0,0 +1,265 @@
+package openinghoursevaluator;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.WeekFields;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.Nullable;
+
+import ch.poole.openinghoursparser.DateRange;
+import ch.poole.openinghoursparser.DateWithOffset;
+import ch.poole.openinghoursparser.Rule;
+import ch.poole.openinghoursparser.TimeSpan;
+import ch.poole.openinghoursparser.WeekDayRange;
+import ch.poole.openinghoursparser.WeekRange;
+import ch.poole.openinghoursparser.YearRange;
+
+/**
+ * The boundaries of the year, week and date selectors of a list of Rules,
+ * used to find the days on which the schedule may change without building
+ * every day in between.
+ * <p>
+ * For each day, a signature telling which YearRange, WeekRange and DateRange
+ * of each Rule apply is computed without building anything. When the rest of
+ * the Rules only depends on the weekday, a day is built the same as the same
+ * weekday of the week before, unless the signature of the day or of the day
+ * before it (for time spills) is different. Only those days are then
+ * candidates to be built. Rules with holidays, variable times, variable
+ * dates, nth weekdays or weekday offsets are not periodic by week, in which
+ * case {@link #isApplicable()} is false.
+ * <p>
+ * When the Rules have no year, week or date selectors either, the schedule
+ * only depends on the weekday, see {@link #isWeekly()}.
+ */
+class RuleBoundaries {
+    // after all the years referred to by the Rules, the calendar repeats
+    // its leap years and weekdays within this many years
+    static final int CALENDAR_CYCLE_YEARS = 28;
+
+    private final List<Rule>    rules;
+    private final Locale        locale;
+    private final boolean       applicable;
+    private final boolean       weekly;
+    private final int           size;
+    private int                 minYear = YearRange.UNDEFINED_YEAR;
+    private int                 maxYear = YearRange.UNDEFINED_YEAR;
+
+    /**
+     * Constructor for a RuleBoundaries
+     *
+     * @param rules the Rules whose selectors are used
+     * @param geolocation the geolocation, used for week numbers
+     */
+    RuleBoundaries(List<Rule> rules, Geolocation geolocation) {
+        this.rules = rules;
+        this.locale = geolocation.getLocale();
+        boolean isApplicable = true;
+        boolean hasCalendar = false;
+        int signatureSize = 0;
+        for (Rule rule : rules) {
+            isApplicable &= isPeriodic(rule);
+            hasCalendar |= rule.getYears() != null || rule.getWeeks() != null || rule.getDates() != null;
+            if (rule.getYears() != null) {
+                for (YearRange yearRange : rule.getYears()) {
+                    addYear(yearRange.getStartYear());
+                    addYear(yearRange.getEndYear());
+                }
+            }
+            if (rule.getDates() != null) {
+                for (DateRange dateRange : rule.getDates()) {
+                    addYear(dateRange.getStartDate().getYear());
+                    if (dateRange.getEndDate() != null) {
+                        addYear(dateRange.getEndDate().getYear());
+                    }
+                }
+                signatureSize += rule.getDates().size();
+            }
+            signatureSize += 2;
+        }
+        this.applicable = isApplicable;
+        this.weekly = isApplicable && !hasCalendar;
+        this.size = signatureSize;
+    }
+
+    /**
+     * Helper for the constructor, check if a Rule only depends on its
+     * selectors and on the weekday
+     */
+    private boolean isPeriodic(Rule rule) {
+        if (rule.getHolidays() != null) {
+            return false;
+        }
+        // every day of a Mon-Sun week must have the same week number
+        if (rule.getWeeks() != null
+                && WeekFields.of(locale).getFirstDayOfWeek() != DayOfWeek.MONDAY) {
+            return false;
+        }
+        if (rule.getDays() != null) {
+            for (WeekDayRange weekdays : rule.getDays()) {
+                if ((weekdays.getNths() != null && !weekdays.getNths().isEmpty())
+                        || weekdays.getOffset() != 0) {
+                    return false;
+                }
+            }
+        }
+        if (rule.getTimes() != null) {
+            for (TimeSpan timespan : rule.getTimes()) {
+                if (timespan.getStartEvent() != null || timespan.getEndEvent() != null) {
+                    return false;
+                }
+            }
+        }
+        if (rule.getDates() != null) {
+            for (DateRange dateRange : rule.getDates()) {
+                if (!isFixed(dateRange.getStartDate())
+                        || (dateRange.getEndDate() != null && !isFixed(dateRange.getEndDate()))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Helper for isPeriodic(), check if a DateWithOffset is a fixed date */
+    private static boolean isFixed(DateWithOffset date) {
+        return date.getVarDate() == null && date.getNthWeekDay() == null;
+    }
+
+    /** Helper for the constructor, keep track of the years referred to */
+    private void addYear(int year) {
+        if (year != YearRange.UNDEFINED_YEAR) {
+            minYear = (minYear == YearRange.UNDEFINED_YEAR) ? year : Math.min(minYear, year);
+            maxYear = (maxYear == YearRange.UNDEFINED_YEAR) ? year : Math.max(maxYear, year);
+        }
+    }
+
+    /**
+     * @return true if the Rules only depend on their selectors and on the
+     *      weekday, so that this can be used
+     */
+    boolean isApplicable() {
+        return applicable;
+    }
+
+    /**
+     * @return true if the Rules only depend on the weekday, so that every
+     *      week is built the same
+     */
+    boolean isWeekly() {
+        return weekly;
+    }
+
+    /**
+     * Get the date after which (or before which, travelling to the past) the
+     * schedule never changes anymore if it has not changed until then. This is
+     * a full calendar cycle after the years referred to by the Rules, taking
+     * into account that open ends and year wraps can reach the year after.
+     *
+     * @param date the date to start from
+     * @param isNext true to travel to the future, false to the past
+     * @return the last date to check, inclusive
+     */
+    LocalDate getLimit(LocalDate date, boolean isNext) {
+        LocalDate start = date;
+        if (isNext && maxYear != YearRange.UNDEFINED_YEAR) {
+            LocalDate afterYears = LocalDate.of(maxYear + 2, 1, 1);
+            start = (afterYears.isAfter(date)) ? afterYears : date;
+        } else if (!isNext && minYear != YearRange.UNDEFINED_YEAR) {
+            LocalDate beforeYears = LocalDate.of(minYear - 2, 12, 31);
+            start = (beforeYears.isBefore(date)) ? beforeYears : date;
+        }
+        return (isNext) ? start.plusYears(CALENDAR_CYCLE_YEARS)
+                        : start.minusYears(CALENDAR_CYCLE_YEARS);
+    }
+
+    /**
+     * Get the signature of a date: for each Rule, which of its YearRanges
+     * applies first, whether any of its WeekRanges applies and whether each of
+     * its DateRanges contains the date
+     *
+     * @param date the date to be checked
+     * @return the signature of the date, null if a selector is invalid and
+     *      could not be checked
+     */
+    @Nullable
+    int[] getSignature(LocalDate date) {
+        int[] signature = new int[size];
+        int i = 0;
+        int weekNum = Week.getWeekOfYear(date, locale);
+        YearManager yearManager = YearManager.SHARED;
+        WeekManager weekManager = WeekManager.SHARED;
+        DateManager dateManager = new DateManager();
+        try {
+            for (Rule rule : rules) {
+                signature[i++] = getYearIndex(rule.getYears(), date.getYear(), yearManager);
+                signature[i++] = (isInWeeks(rule.getWeeks(), weekNum, weekManager)) ? 1 : 0;
+                if (rule.getDates() != null) {
+                    for (DateRange dateRange : rule.getDates()) {
+                        signature[i++] = (isInDateRange(dateRange, date, dateManager)) ? 1 : 0;
+                    }
+                }
+            }
+        } catch (OpeningHoursEvaluationException e) {
+            // let the build report it
+            return null;
+        }
+        return signature;
+    }
+
+    /**
+     * Helper for getSignature(), get the index of the first YearRange
+     * applicable to a year, as used in {@link MonthRule}
+     *
+     * @return 1 + index of the first applicable YearRange, 0 if there is no
+     *      YearRange and -1 if none applies
+     */
+    private static int getYearIndex(@Nullable List<YearRange> years, int yearNum,
+                                    YearManager yearManager)
+            throws OpeningHoursEvaluationException {
+        if (years == null) {
+            return 0;
+        }
+        for (int i=0; i < years.size(); i++) {
+            if (yearManager.processYearRange(years.get(i), yearNum)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Helper for getSignature(), check if any WeekRange (or no WeekRange at
+     * all) applies to a week number
+     */
+    private static boolean isInWeeks(@Nullable List<WeekRange> weeks, int weekNum,
+                                     WeekManager weekManager) {
+        if (weeks == null) {
+            return true;
+        }
+        for (WeekRange weekRange : weeks) {
+            if (weekManager.processWeekRange(weekRange, weekNum)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper for getSignature(), check if a date is in a DateRange, processed
+     * with the year of the date as in {@link MonthRule}
+     */
+    private static boolean isInDateRange(DateRange dateRange, LocalDate date,
+                                         DateManager dateManager)
+            throws OpeningHoursEvaluationException {
+        for (List<LocalDate> restriction : dateManager.processDateRange(dateRange, date.getYear())) {
+            LocalDate start = restriction.get(0);
+            LocalDate end = restriction.get(restriction.size() - 1);
+            if (!date.isBefore(start) && !date.isAfter(end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
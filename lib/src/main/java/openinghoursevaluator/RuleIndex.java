@@ -0,0 +1,181 @@
+package openinghoursevaluator;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import ch.poole.openinghoursparser.DateRange;
+import ch.poole.openinghoursparser.DateWithOffset;
+import ch.poole.openinghoursparser.Rule;
+import ch.poole.openinghoursparser.WeekRange;
+import ch.poole.openinghoursparser.YearRange;
+
+/**
+ * A coarse index of the year, week and month ranges of a list of Rules, used
+ * to prove without building anything that a range of days is wholly closed.
+ * <p>
+ * Only Rules that can give a Status other than CLOSED are indexed. For each,
+ * the months in which its DateRanges can fall are precomputed, widened by a
+ * month where there is an offset, and year and week ranges are
+ * checked as in {@link YearManager} and {@link WeekManager}. Whenever a
+ * selector is too complex to be reasoned about here (variable dates, large
+ * offsets, open ends, ranges over several years), the Rule is assumed to
+ * possibly apply, so the index can only err on the side of building.
+ */
+class RuleIndex {
+    private final List<Entry>   entries = new ArrayList<>();
+    private final Locale        locale;
+
+    /**
+     * Constructor for a RuleIndex
+     *
+     * @param rules the Rules to be indexed
+     * @param geolocation the geolocation, used for week numbers
+     */
+    RuleIndex(List<Rule> rules, Geolocation geolocation) {
+        this.locale = geolocation.getLocale();
+        for (Rule rule : rules) {
+            if (Status.convert(rule.getModifier()) != Status.CLOSED) {
+                entries.add(new Entry(rule));
+            }
+        }
+    }
+
+    /**
+     * Check if any day between two dates could be anything other than
+     * CLOSED. Note that a day can receive time spilled from the day before,
+     * which should be included in the range.
+     *
+     * @param from first date to check
+     * @param to last date to check, inclusive
+     * @return false only if every day in the range is surely CLOSED
+     */
+    boolean mayNotBeClosed(LocalDate from, LocalDate to) {
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            // a built Week takes the week number of the date it is built
+            // around, which depends on the locale, so any week number of the
+            // days of the week of this date is considered
+            int[] weekNums = new int[7];
+            LocalDate monday = WeekManager.getFirstDayOfWeek(date);
+            for (int i=0; i < weekNums.length; i++) {
+                weekNums[i] = Week.getWeekOfYear(monday.plusDays(i), locale);
+            }
+            for (Entry entry : entries) {
+                if (entry.mayApply(date, weekNums)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The selectors of an indexed Rule
+     */
+    private static class Entry {
+        final List<YearRange>   years;
+        final List<WeekRange>   weeks;
+        // months (0-11) in which the DateRanges may fall, null if any
+        final boolean[]         months;
+
+        Entry(Rule rule) {
+            years = rule.getYears();
+            weeks = rule.getWeeks();
+            months = (rule.getDates() != null) ? getMonths(rule.getDates()) : null;
+        }
+
+        /**
+         * Check if the Rule may apply on a date, according to its year, week
+         * and month selectors only
+         */
+        boolean mayApply(LocalDate date, int[] weekNums) {
+            if (months != null && !months[date.getMonthValue()-1]) {
+                return false;
+            }
+            if (years != null) {
+                YearManager yearManager = YearManager.SHARED;
+                boolean found = false;
+                for (YearRange yearRange : years) {
+                    try {
+                        found = yearManager.processYearRange(yearRange, date.getYear());
+                    } catch (OpeningHoursEvaluationException e) {
+                        // let the build report it
+                        found = true;
+                    }
+                    if (found) {
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            if (weeks != null) {
+                WeekManager weekManager = WeekManager.SHARED;
+                for (WeekRange weekRange : weeks) {
+                    for (int weekNum : weekNums) {
+                        if (weekManager.processWeekRange(weekRange, weekNum)) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Get the months in which a list of DateRange may fall
+         *
+         * @return months (0-11) in which the DateRanges may fall, null if any
+         */
+        static boolean[] getMonths(List<DateRange> dates) {
+            boolean[] result = new boolean[12];
+            for (DateRange dateRange : dates) {
+                DateWithOffset start = dateRange.getStartDate();
+                DateWithOffset end = dateRange.getEndDate();
+                if (!isSimple(start) || start.getMonth() == null
+                        || (end != null && !isSimple(end))
+                        || DateManager.isOpenEndDateRange(dateRange)) {
+                    return null;
+                }
+                int startMonth = start.getMonth().ordinal();
+                int endMonth = (end != null && end.getMonth() != null)
+                                ? end.getMonth().ordinal()
+                                : startMonth;
+                if (end != null && start.getYear() != YearRange.UNDEFINED_YEAR
+                        && end.getYear() != YearRange.UNDEFINED_YEAR
+                        && end.getYear() != start.getYear()) {
+                    return null;
+                }
+                // widen by a month on the sides that have offsets
+                DateWithOffset last = (end != null) ? end : start;
+                int month = startMonth + 12 - (hasOffset(start) ? 1 : 0);
+                int stop = ((endMonth < startMonth) ? endMonth + 12 : endMonth) + 12
+                            + (hasOffset(last) ? 1 : 0);
+                for (; month <= stop; month++) {
+                    result[month % 12] = true;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Check if a DateWithOffset is not a variable date and has at most a
+         * week of offset
+         */
+        static boolean isSimple(DateWithOffset date) {
+            return date.getVarDate() == null
+                && Math.abs(date.getDayOffset()) <= 7;
+        }
+
+        /**
+         * Check if a DateWithOffset has a day or weekday offset, which can
+         * move it into a neighbouring month
+         */
+        static boolean hasOffset(DateWithOffset date) {
+            return date.getDayOffset() != 0 || date.getWeekDayOffset() != null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package openinghoursevaluator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import ch.poole.openinghoursparser.DateRange;
+import ch.poole.openinghoursparser.Rule;
+import ch.poole.openinghoursparser.WeekDay;
+import ch.poole.openinghoursparser.WeekDayRange;
+import ch.poole.openinghoursparser.YearRange;
+
+/**
+ * The evaluation plan of a Rule, classified once by the selectors it uses.
+ * <p>
+ * {@link MonthRule} goes through a YearRange, a WeekRange and a DateRange
+ * stage before building a Week with a Rule. The plan tells which of these
+ * stages the Rule needs, so that the others are skipped, for example a Rule
+ * with only weekdays and times is built right away. What every build of the
+ * Rule would otherwise allocate again is also kept: its weekdays, all of
+ * them if it has none, and its copy with the comment of open end.
+ * <p>
+ * A plan refers to its Rule, which must not be changed afterwards.
+ */
+class RulePlan {
+    // the stages of the selectors of a Rule, as bits of getStages()
+    static final int YEARS  = 1;
+    static final int WEEKS  = 2;
+    static final int DATES  = 4;
+
+    private final Rule                  rule;
+    private final int                   stages;
+    private final List<WeekDayRange>    weekdays;
+    private final Rule                  openEndRule;
+
+    /**
+     * Constructor for the plan of a Rule
+     *
+     * @param rule the Rule
+     */
+    RulePlan(Rule rule) {
+        this.rule = rule;
+        int selectors = 0;
+        boolean hasOpenEnd = false;
+        if (rule.getYears() != null) {
+            selectors |= YEARS;
+            for (YearRange yearRange : rule.getYears()) {
+                hasOpenEnd |= yearRange.isOpenEnded();
+            }
+        }
+        if (rule.getWeeks() != null) {
+            selectors |= WEEKS;
+        }
+        if (rule.getDates() != null) {
+            selectors |= DATES;
+            for (DateRange dateRange : rule.getDates()) {
+                hasOpenEnd |= DateManager.isOpenEndDateRange(dateRange);
+            }
+        }
+        this.stages = selectors;
+        if (rule.getDays() != null) {
+            this.weekdays = rule.getDays();
+        } else {
+            WeekDayRange allWeek = new WeekDayRange();
+            allWeek.setStartDay(WeekDay.MO);
+            allWeek.setEndDay(WeekDay.SU);
+            this.weekdays = Collections.singletonList(allWeek);
+        }
+        this.openEndRule = (hasOpenEnd) ? MonthRule.processOpenEndRule(rule) : null;
+    }
+
+    /**
+     * Get the plans of a list of Rules
+     *
+     * @param rules the list of Rules
+     * @return an unmodifiable List of the plan of each Rule, in the same order
+     */
+    static List<RulePlan> of(List<Rule> rules) {
+        List<RulePlan> plans = new ArrayList<>();
+        for (Rule rule : rules) {
+            plans.add(new RulePlan(rule));
+        }
+        return Collections.unmodifiableList(plans);
+    }
+
+    /**
+     * @return the Rule of this plan
+     */
+    Rule getRule() {
+        return rule;
+    }
+
+    /**
+     * @return the stages needed by the Rule, as a combination of
+     *      {@link #YEARS}, {@link #WEEKS} and {@link #DATES}, 0 if it only
+     *      depends on weekdays and times
+     */
+    int getStages() {
+        return stages;
+    }
+
+    /**
+     * @param stage one of {@link #YEARS}, {@link #WEEKS} and {@link #DATES}
+     * @return true if the Rule needs this stage
+     */
+    boolean has(int stage) {
+        return (stages & stage) != 0;
+    }
+
+    /**
+     * @return the WeekDayRanges the Rule is built on, all the week if the
+     *      Rule has none
+     */
+    List<WeekDayRange> getWeekdays() {
+        return weekdays;
+    }
+
+    /**
+     * @return the Rule with the comment of open end, see
+     *      {@link MonthRule#processOpenEndRule(Rule)}, null if the Rule has
+     *      no open-ended YearRange or DateRange
+     */
+    @Nullable
+    Rule getOpenEndRule() {
+        return openEndRule;
+    }
+
+    @Override
+    public String toString() {
+        if (stages == 0) {
+            return "weekdays";
+        }
+        StringBuilder b = new StringBuilder();
+        if (has(YEARS)) {
+            b.append("years+");
+        }
+        if (has(WEEKS)) {
+            b.append("weeks+");
+        }
+        if (has(DATES)) {
+            b.append("dates+");
+        }
+        return b.append("weekdays").toString();
+    }
+}
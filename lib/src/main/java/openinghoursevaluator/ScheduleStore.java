@@ -0,0 +1,169 @@
+package openinghoursevaluator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import javax.annotation.Nonnull;
+
+import ch.poole.openinghoursparser.OpeningHoursParseException;
+
+/**
+ * A store of the schedules of many POIs, answering "status at T" and "next
+ * change after T" from a memory mapped file of {@link CompiledSchedules},
+ * where the ID of a POI is the index of its schedule in the file.
+ * <p>
+ * Weekly schedules, which are most of them, are answered directly from the
+ * day templates in the mapped file: nothing is parsed or allocated, and no
+ * {@link Week} or {@link WeekDayRule} is built, so the heap does not grow
+ * with the number of POIs. Other schedules are restored as
+ * {@link CompiledOpeningHours} when first queried, and only a bounded number
+ * of them are kept in a {@link LruCache}.
+ * <p>
+ * Times are local times in minutes since 1970-01-01T00:00, see
+ * {@link CompiledOpeningHours#toEpochMinute(LocalDateTime)}. This class is
+ * thread-safe.
+ */
+public class ScheduleStore {
+    // default number of restored schedules kept
+    public static final int     DEFAULT_CACHE_SIZE  = 10000;
+    // next change of a schedule whose Status never changes
+    public static final long    NO_TIME             = Long.MIN_VALUE;
+
+    private static final long   MINUTES_PER_DAY     = 1440;
+
+    private final CompiledSchedules                     schedules;
+    private final LruCache<Long, CompiledOpeningHours>  restored;
+
+    /**
+     * Constructor for a ScheduleStore over schedules already read
+     *
+     * @param schedules the schedules, indexed by POI ID
+     * @param cacheSize maximum number of non-weekly schedules kept restored
+     */
+    public ScheduleStore(@Nonnull CompiledSchedules schedules, int cacheSize) {
+        this.schedules = schedules;
+        this.restored = new LruCache<>(cacheSize);
+    }
+
+    /**
+     * Open a file written by a {@link CompiledSchedules.Writer}, keeping up to
+     * {@link #DEFAULT_CACHE_SIZE} non-weekly schedules restored
+     *
+     * @param path path of the file
+     * @return a new ScheduleStore
+     * @throws IOException if the file can't be read or is not in this format
+     */
+    public static ScheduleStore open(@Nonnull Path path) throws IOException {
+        return new ScheduleStore(CompiledSchedules.read(path), DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @return the number of POIs, whose IDs go from 0 to this number excluded
+     */
+    public long size() {
+        return schedules.size();
+    }
+
+    /**
+     * @param poiId ID of a POI
+     * @return true if the schedule of the POI is answered from the mapped
+     *      file, without restoring it
+     */
+    public boolean isWeekly(long poiId) {
+        return schedules.isWeekly(toIndex(poiId));
+    }
+
+    /**
+     * Get the Status of a POI at a time
+     *
+     * @param poiId ID of a POI
+     * @param epochMinute the local time, in minutes since 1970-01-01T00:00
+     * @return the Status at that time
+     * @throws OpeningHoursEvaluationException when there's problem during
+     *      evaluation of a non-weekly schedule
+     */
+    public Status getStatus(long poiId, long epochMinute) throws OpeningHoursEvaluationException {
+        int index = toIndex(poiId);
+        if (!schedules.isWeekly(index)) {
+            return getRestored(poiId).checkStatusFast(epochMinute);
+        }
+        long epochDay = Math.floorDiv(epochMinute, MINUTES_PER_DAY);
+        return schedules.getStatus(schedules.getDayTemplate(index, getWeekday(epochDay)),
+                                   (int) Math.floorMod(epochMinute, MINUTES_PER_DAY));
+    }
+
+    /**
+     * Get the next time at which the Status of a POI differs from its Status
+     * at an input time, same as {@link CompiledOpeningHours#getNextEvent}
+     *
+     * @param poiId ID of a POI
+     * @param epochMinute the local time, in minutes since 1970-01-01T00:00
+     * @return the time of the next change, in minutes since
+     *      1970-01-01T00:00, {@link #NO_TIME} if the Status never changes
+     * @throws OpeningHoursEvaluationException when there's problem during
+     *      evaluation of a non-weekly schedule
+     */
+    public long getNextChange(long poiId, long epochMinute) throws OpeningHoursEvaluationException {
+        int index = toIndex(poiId);
+        long epochDay = Math.floorDiv(epochMinute, MINUTES_PER_DAY);
+        int minute = (int) Math.floorMod(epochMinute, MINUTES_PER_DAY);
+        if (!schedules.isWeekly(index)) {
+            LocalDateTime time = LocalDate.ofEpochDay(epochDay).atStartOfDay().plusMinutes(minute);
+            Result next = getRestored(poiId).getNextEvent(time);
+            return (next.isAlways() || next.getNextEventTime() == null)
+                ? NO_TIME
+                : CompiledOpeningHours.toEpochMinute(next.getNextEventTime());
+        }
+        int weekday = getWeekday(epochDay);
+        Status status = schedules.getStatus(schedules.getDayTemplate(index, weekday), minute);
+        // every week is the same, so the change is within the next 7 days or
+        // never
+        for (int i=0; i <= 7; i++) {
+            int template = schedules.getDayTemplate(index, (weekday + i) % 7);
+            int differing = schedules.getDifferingMinute(template, (i == 0) ? minute : 0, status);
+            if (differing >= 0) {
+                return (epochDay + i) * MINUTES_PER_DAY + differing;
+            }
+        }
+        return NO_TIME;
+    }
+
+    /** Get the weekday of an epoch day, 0 for Monday */
+    private static int getWeekday(long epochDay) {
+        // 1970-01-01 is a Thursday
+        return (int) Math.floorMod(epochDay + 3, 7);
+    }
+
+    /** Check that a POI ID is in the store and convert it to an index */
+    private int toIndex(long poiId) {
+        if (poiId < 0 || poiId >= schedules.size()) {
+            throw new IndexOutOfBoundsException("No POI with ID " + poiId);
+        }
+        return (int) poiId;
+    }
+
+    /** Get a non-weekly schedule, restoring it if it is not kept */
+    private CompiledOpeningHours getRestored(long poiId) throws OpeningHoursEvaluationException {
+        CompiledOpeningHours compiled = restored.get(poiId);
+        if (compiled == null) {
+            try {
+                compiled = schedules.get((int) poiId);
+            } catch (OpeningHoursParseException e) {
+                throw new OpeningHoursEvaluationException("Schedule of POI " + poiId + " can't be parsed: "
+                                                          + e.getMessage());
+            }
+            restored.put(poiId, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * @return the cache of restored non-weekly schedules, mainly for its
+     *      statistics
+     */
+    public LruCache<Long, CompiledOpeningHours> getRestoredCache() {
+        return restored;
+    }
+}
@@ -0,0 +1,175 @@
+package openinghoursevaluator;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.shredzone.commons.suncalc.SunTimes;
+
+/**
+ * A cache of the times of events of day (dawn, sunrise, sunset, dusk), shared
+ * between evaluators, so that the astronomical calculation is done only once
+ * per location and day.
+ * <p>
+ * Coordinates are snapped to a grid before being used as a key, and the
+ * calculation is done at the snapped coordinates, so that the result does not
+ * depend on which nearby location was evaluated first. The default grid step
+ * of {@link #DEFAULT_QUANTIZATION} degrees is about 11 meters, which moves the
+ * events by well under a second. This class is thread-safe.
+ */
+public class SunEventCache {
+    // default maximum number of (location, day, twilight) entries kept
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+    // default grid step of the coordinates, in degrees
+    public static final double DEFAULT_QUANTIZATION = 1e-4;
+
+    private static volatile SunEventCache defaultCache
+        = new SunEventCache(DEFAULT_CACHE_SIZE, DEFAULT_QUANTIZATION);
+
+    private final double                quantization;
+    private final LruCache<Key, int[]>  cache;
+
+    /**
+     * Constructor for a SunEventCache
+     *
+     * @param cacheSize maximum number of entries kept, 0 to disable caching
+     * @param quantization grid step of coordinates in degrees, 0 to use the
+     *      exact coordinates
+     */
+    public SunEventCache(int cacheSize, double quantization) {
+        if (quantization < 0) {
+            throw new IllegalArgumentException("Quantization must not be negative");
+        }
+        this.quantization = quantization;
+        this.cache = new LruCache<>(cacheSize);
+    }
+
+    /**
+     * @return the SunEventCache used during evaluation
+     */
+    public static SunEventCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * Set the SunEventCache used during evaluation, for example to change its
+     * size or quantization
+     *
+     * @param sunEventCache the SunEventCache to be used
+     */
+    public static void setDefault(@Nonnull SunEventCache sunEventCache) {
+        defaultCache = sunEventCache;
+    }
+
+    /**
+     * @return the grid step of coordinates in degrees
+     */
+    public double getQuantization() {
+        return quantization;
+    }
+
+    /**
+     * @return the underlying cache, mainly for its statistics
+     */
+    public LruCache<?, int[]> getCache() {
+        return cache;
+    }
+
+    /**
+     * Get the times of rise and set of the sun on a date at a location
+     *
+     * @param lat latitude
+     * @param lng longitude
+     * @param date the date
+     * @param zoneId the timezone of the location
+     * @param isTwilight true for civil dawn and dusk, false for sunrise
+     *      and sunset
+     * @return {rise, set} in minutes of the day, with
+     *      {@link WeekDayRule#INVALID_NUM} where the event does not happen
+     */
+    int[] getRiseAndSet(double lat, double lng, LocalDate date, @Nullable ZoneId zoneId,
+                        boolean isTwilight) {
+        Key key = new Key(quantize(lat), quantize(lng), date, zoneId, isTwilight);
+        int[] times = cache.get(key);
+        if (times == null) {
+            times = compute(unquantize(key.lat, lat), unquantize(key.lng, lng), date, zoneId, isTwilight);
+            cache.put(key, times);
+        }
+        return times;
+    }
+
+    /** Helper for getRiseAndSet(), snap a coordinate to the grid */
+    private long quantize(double coordinate) {
+        return (quantization == 0) ? Double.doubleToLongBits(coordinate)
+                                   : Math.round(coordinate / quantization);
+    }
+
+    /** Helper for getRiseAndSet(), get back the coordinate of a grid point */
+    private double unquantize(long quantized, double coordinate) {
+        return (quantization == 0) ? coordinate : quantized * quantization;
+    }
+
+    /**
+     * Calculate the times of rise and set of the sun, see
+     * {@link #getRiseAndSet(double, double, LocalDate, ZoneId, boolean)}
+     */
+    private static int[] compute(double lat, double lng, LocalDate date, ZoneId zoneId,
+                                 boolean isTwilight) {
+        SunTimes.Parameters parameters = SunTimes.compute();
+        if (isTwilight) {
+            parameters = parameters.twilight(SunTimes.Twilight.CIVIL);
+        }
+        SunTimes events = parameters
+            .on(date.atStartOfDay(zoneId))  // set a date
+            .at(lat, lng)                   // set a location
+            .execute();                     // get the results
+        return new int[] { timeInMinute(events.getRise()), timeInMinute(events.getSet()) };
+    }
+
+    /** Helper for compute(), convert an event time to minutes */
+    private static int timeInMinute(@Nullable ZonedDateTime time) {
+        return (time != null) ? Utils.timeInMinute(time.toLocalDateTime())
+                              : WeekDayRule.INVALID_NUM;
+    }
+
+    /**
+     * Key of the cache, with coordinates already snapped to the grid
+     */
+    private static class Key {
+        final long      lat;
+        final long      lng;
+        final LocalDate date;
+        final ZoneId    zoneId;
+        final boolean   isTwilight;
+
+        Key(long lat, long lng, LocalDate date, ZoneId zoneId, boolean isTwilight) {
+            this.lat = lat;
+            this.lng = lng;
+            this.date = date;
+            this.zoneId = zoneId;
+            this.isTwilight = isTwilight;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key o = (Key) other;
+            return lat == o.lat && lng == o.lng && isTwilight == o.isTwilight
+                && date.equals(o.date) && Objects.equals(zoneId, o.zoneId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lat, lng, date, zoneId, isTwilight);
+        }
+    }
+}
@@ -1,37 +1,51 @@
 package openinghoursevaluator;
 
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
 
 import ch.poole.openinghoursparser.Rule;
 
 /**
  * A class used to travel into time to get next differing event, used to find
  * open next
- * 
+ *
  */
 public class TimeTraveller {
     // a limit to lookahead into the future/past when checking open next
     public static final int MAX_FUTURE_WEEKS = 100;
     public static final int MAX_PAST_WEEKS = 100;
 
-    List<Rule>  rules       = null;
-    Geolocation    geocoder    = null;
+    CompiledOpeningHours compiled = null;
 
     public TimeTraveller() {
         //empty
     }
 
     public TimeTraveller(List<Rule> rules, Geolocation geocoder) {
-        this.rules = rules;
-        this.geocoder = geocoder;
+        this(new CompiledOpeningHours(rules, geocoder));
+    }
+
+    /**
+     * Constructor for a TimeTraveller travelling through the days built by
+     * a {@link CompiledOpeningHours}
+     *
+     * @param compiled the compiled opening hours
+     */
+    public TimeTraveller(CompiledOpeningHours compiled) {
+        this.compiled = compiled;
     }
 
     /**
      * Return next differing event of the input time (status different
      * from status of the evaluation of inputTime against the stored rules)
-     * 
+     *
      * @param inputTime time to be checked
      * @param isNext true to look next differing event, false to look last
      * @return next differing event of the input time (status different from
@@ -40,29 +54,151 @@ public class TimeTraveller {
      */
     public Result getDifferingEvent(LocalDateTime inputTime, boolean isNext)
             throws OpeningHoursEvaluationException {
-        MonthRule monthRule = new MonthRule(rules, geocoder);
-
-        // checking in current week in monthRule first
-        monthRule.buildWeek(inputTime);
-        Status statusToCheck = monthRule.checkStatus(inputTime).getStatus();
-        Result result = monthRule.getDifferingEvent(inputTime, statusToCheck, isNext);
-
-        // if nothing could be found, go to the future!
-        if (result != null) {
-            return result;
-        } else {
-            LocalDate lookahead = inputTime.toLocalDate();
-            for (int i=0; i < MAX_FUTURE_WEEKS; i++) {
-                lookahead = DateManager.getOffsetDate(lookahead, (isNext) ? 7 : -7);
-                monthRule.buildWeek(lookahead.atStartOfDay());
-                result = monthRule.getDifferingEvent(statusToCheck, isNext);
-                if (result != null) {
-                    return result;
+        LocalDate date = inputTime.toLocalDate();
+        Status statusToCheck = compiled.checkStatus(inputTime);
+
+        // checking in current day first
+        DaySchedule today = getDayOfWeek(date);
+        TimeRange check = today.getDifferingEventToday(Utils.timeInMinute(inputTime), isNext);
+        if (check != null) {
+            return Week.processDifferingEvent(date, check, isNext);
+        }
+
+        // if every week is the same, the event is within the next 7 days or
+        // never
+        if (compiled.isWeekly()) {
+            return travelWeek(date, statusToCheck, isNext);
+        }
+
+        // if the schedule only changes at the boundaries of selectors, only
+        // build the days around them
+        if (compiled.getRuleBoundaries().isApplicable()) {
+            Result result = travelByBoundaries(date, statusToCheck, isNext);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        // if nothing could be found, go to the future! (or the past)
+        LocalDate limit = (isNext)
+            ? WeekManager.getLastDayOfWeek(date).plusWeeks(MAX_FUTURE_WEEKS)
+            : WeekManager.getFirstDayOfWeek(date).minusWeeks(MAX_PAST_WEEKS);
+        LocalDate current = DateManager.getOffsetDate(date, (isNext) ? 1 : -1);
+        while ((isNext) ? !current.isAfter(limit) : !current.isBefore(limit)) {
+            if (statusToCheck == Status.CLOSED && isSkippableWeek(current, isNext)) {
+                current = current.plusWeeks((isNext) ? 1 : -1);
+                continue;
+            }
+            check = getDayOfWeek(current).getDifferingEvent(statusToCheck, isNext);
+            if (check != null) {
+                return Week.processDifferingEvent(current, check, isNext);
+            }
+            current = DateManager.getOffsetDate(current, (isNext) ? 1 : -1);
+        }
+        Result always = new Result(statusToCheck, null, null);
+        always.setAlways(true);
+        return always;
+    }
+
+    /**
+     * Helper for getDifferingEvent(), travel through the 7 days after (or
+     * before) the input date when every week is built the same, the last one
+     * being the same weekday as the input date
+     */
+    private Result travelWeek(LocalDate date, Status statusToCheck, boolean isNext)
+            throws OpeningHoursEvaluationException {
+        for (int i=1; i <= 7; i++) {
+            LocalDate current = date.plusDays((isNext) ? i : -i);
+            TimeRange check = getDayOfWeek(current).getDifferingEvent(statusToCheck, isNext);
+            if (check != null) {
+                return Week.processDifferingEvent(current, check, isNext);
+            }
+        }
+        Result always = new Result(statusToCheck, null, null);
+        always.setAlways(true);
+        return always;
+    }
+
+    /**
+     * Helper for getDifferingEvent(), travel to the next differing event by
+     * building only the days that may be built differently than the same
+     * weekday a week closer to the input date, see {@link RuleBoundaries}.
+     * The first week is always built. The travel goes on until the schedule
+     * provably never changes anymore, so it is not limited to
+     * {@link #MAX_FUTURE_WEEKS} or {@link #MAX_PAST_WEEKS}.
+     *
+     * @return the differing event, or null if a selector could not be checked
+     *      and the travel should be done day by day instead
+     */
+    @Nullable
+    private Result travelByBoundaries(LocalDate date, Status statusToCheck, boolean isNext)
+            throws OpeningHoursEvaluationException {
+        RuleBoundaries boundaries = compiled.getRuleBoundaries();
+        LocalDate limit = boundaries.getLimit(date, isNext);
+        int step = (isNext) ? 1 : -1;
+        Map<LocalDate, int[]> signatures = new HashMap<>();
+        LocalDate current = date.plusDays(step);
+        for (int i=1; (isNext) ? !current.isAfter(limit) : !current.isBefore(limit); i++) {
+            if (i > 7) {
+                LocalDate weekCloser = current.minusWeeks(step);
+                int[] signature = getSignature(boundaries, signatures, current);
+                int[] closerSignature = getSignature(boundaries, signatures, weekCloser);
+                int[] dayBefore = getSignature(boundaries, signatures, current.minusDays(1));
+                int[] closerDayBefore = getSignature(boundaries, signatures, weekCloser.minusDays(1));
+                if (signature == null || closerSignature == null
+                        || dayBefore == null || closerDayBefore == null) {
+                    return null;
                 }
+                signatures.remove(current.minusDays(9L * step));
+                if (Arrays.equals(signature, closerSignature)
+                        && Arrays.equals(dayBefore, closerDayBefore)) {
+                    current = current.plusDays(step);
+                    continue;
+                }
+            }
+            TimeRange check = getDayOfWeek(current).getDifferingEvent(statusToCheck, isNext);
+            if (check != null) {
+                return Week.processDifferingEvent(current, check, isNext);
             }
+            current = current.plusDays(step);
         }
         Result always = new Result(statusToCheck, null, null);
         always.setAlways(true);
         return always;
     }
+
+    /** Helper for travelByBoundaries(), get the signature of a date once */
+    @Nullable
+    private static int[] getSignature(RuleBoundaries boundaries,
+                                      Map<LocalDate, int[]> signatures, LocalDate date) {
+        int[] signature = signatures.get(date);
+        if (signature == null) {
+            signature = boundaries.getSignature(date);
+            signatures.put(date, signature);
+        }
+        return signature;
+    }
+
+    /**
+     * Helper for getDifferingEvent(), check if the date starts a week (in the
+     * direction of travel) that is surely wholly closed, including any time
+     * spilled from the day before it, so that it does not need to be built
+     */
+    private boolean isSkippableWeek(LocalDate date, boolean isNext) {
+        if (date.getDayOfWeek() != ((isNext) ? DayOfWeek.MONDAY : DayOfWeek.SUNDAY)) {
+            return false;
+        }
+        LocalDate monday = WeekManager.getFirstDayOfWeek(date);
+        return !compiled.getRuleIndex().mayNotBeClosed(monday.minusDays(1),
+                                                        WeekManager.getLastDayOfWeek(date));
+    }
+
+    /**
+     * Helper for getDifferingEvent(), get the schedule of a date as built
+     * together with its week
+     */
+    private DaySchedule getDayOfWeek(LocalDate date)
+            throws OpeningHoursEvaluationException {
+        return compiled.getWeekSchedule(date).get(date.getDayOfWeek().ordinal());
+    }
 }
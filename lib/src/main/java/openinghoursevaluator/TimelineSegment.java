@@ -0,0 +1,69 @@
+package openinghoursevaluator;
+
+import java.time.LocalDateTime;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An immutable segment of a timeline, a range of time in which the Status
+ * and comment do not change. See
+ * {@link OpeningHoursEvaluator#getTimeline(LocalDateTime, LocalDateTime)}
+ */
+public class TimelineSegment {
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+    private final Status        status;
+    private final String        comment;
+
+    /**
+     * Constructor for a TimelineSegment
+     *
+     * @param start start of the segment, inclusive
+     * @param end end of the segment, exclusive
+     * @param status Status during the segment
+     * @param comment an optional comment
+     */
+    public TimelineSegment(@Nonnull LocalDateTime start, @Nonnull LocalDateTime end,
+                           @Nonnull Status status, @Nullable String comment) {
+        this.start = start;
+        this.end = end;
+        this.status = status;
+        this.comment = comment;
+    }
+
+    /**
+     * @return start of this segment, inclusive
+     */
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    /**
+     * @return end of this segment, exclusive
+     */
+    public LocalDateTime getEnd() {
+        return end;
+    }
+
+    /**
+     * @return Status during this segment
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return comment of this segment, null if none
+     */
+    @Nullable
+    public String getComment() {
+        return comment;
+    }
+
+    @Override
+    public String toString() {
+        return start + "/" + end + " " + status
+            + ((comment != null) ? " \"" + comment + "\"" : "");
+    }
+}
@@ -0,0 +1,299 @@
+package openinghoursevaluator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A streaming pipeline evaluating a TSV file of features, one per line with
+ * the columns osm_id, opening_hours, lat, lon and country (which can be
+ * empty). lat and lon can only be empty for tags without variable times
+ * (sunrise, dusk, ...), the others are reported as errors. A first line
+ * starting with "osm_id" is taken as a header.
+ * <p>
+ * The output is a TSV file with the columns osm_id, status, next_change and
+ * error, in the same order as the input. next_change is empty if the status
+ * never changes, error is empty unless the line could not be read or its tag
+ * could not be parsed or evaluated.
+ * <p>
+ * Lines are read in chunks, each chunk evaluated in parallel by a
+ * {@link BatchEvaluator} while the previous one is written. Reading waits for
+ * the previous chunk to be written, so at most two chunks are held in memory
+ * whatever the size of the file.
+ * <p>
+ * Usage: {@code TsvPipeline <input.tsv> <output.tsv> [time] [threads]}, with
+ * time a local time such as 2021-09-02T10:00 (default now), and threads the
+ * number of evaluating threads (default the number of processors).
+ */
+public class TsvPipeline {
+    public static final String HEADER = "osm_id\tstatus\tnext_change\terror";
+
+    // size of the buffers of the channels, in characters
+    private static final int    BUFFER_SIZE         = 1 << 16;
+    // minimum time between two reports of progress
+    private static final long   REPORT_INTERVAL     = 5_000_000_000L;
+
+    private final BatchEvaluator    batch;
+    private final int               chunkSize;
+    private final boolean           isVerbose;
+
+    /**
+     * Constructor for a TsvPipeline
+     *
+     * @param batch the BatchEvaluator evaluating the chunks
+     * @param chunkSize number of lines per chunk
+     * @param isVerbose true to report the progress on standard output
+     */
+    public TsvPipeline(@Nonnull BatchEvaluator batch, int chunkSize, boolean isVerbose) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.batch = batch;
+        this.chunkSize = chunkSize;
+        this.isVerbose = isVerbose;
+    }
+
+    /**
+     * Entry point of the pipeline, see the usage above
+     *
+     * @param args input path, output path, optional time and optional number
+     *      of threads
+     * @throws IOException when the input can't be read or the output written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 4) {
+            System.out.println("Usage: TsvPipeline <input.tsv> <output.tsv> [time] [threads]");
+            System.exit(1);
+        }
+        LocalDateTime time = (args.length > 2) ? LocalDateTime.parse(args[2]) : LocalDateTime.now();
+        int threads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            BatchEvaluator batch = new BatchEvaluator(pool, EvaluatorFactory.getDefault(), false,
+                                                      BatchEvaluator.DEFAULT_CHUNK_SIZE);
+            new TsvPipeline(batch, BatchEvaluator.DEFAULT_CHUNK_SIZE, true).run(Paths.get(args[0]),
+                                                                                 Paths.get(args[1]), time);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Evaluate a TSV file of features, writing the results to another
+     *
+     * @param input path of the input TSV file
+     * @param output path of the output TSV file, replaced if it exists
+     * @param time local time to evaluate at
+     * @return the number of features evaluated
+     * @throws IOException when the input can't be read or the output written
+     */
+    public long run(@Nonnull Path input, @Nonnull Path output, @Nonnull LocalDateTime time) throws IOException {
+        try (FileChannel inChannel = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel outChannel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                       StandardOpenOption.TRUNCATE_EXISTING);
+             BufferedReader in = new BufferedReader(Channels.newReader(inChannel, StandardCharsets.UTF_8.newDecoder(),
+                                                                       BUFFER_SIZE), BUFFER_SIZE);
+             Writer out = new BufferedWriter(Channels.newWriter(outChannel, StandardCharsets.UTF_8.newEncoder(),
+                                                                BUFFER_SIZE), BUFFER_SIZE)) {
+            return run(in, out, time);
+        }
+    }
+
+    /**
+     * Evaluate features read as TSV, writing the results as TSV. Neither is
+     * closed.
+     *
+     * @param in reader of the input TSV
+     * @param out writer of the output TSV, flushed at the end
+     * @param time local time to evaluate at
+     * @return the number of features evaluated
+     * @throws IOException when the input can't be read or the output written
+     */
+    public long run(@Nonnull BufferedReader in, @Nonnull Writer out, @Nonnull LocalDateTime time)
+            throws IOException {
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        long start = System.nanoTime();
+        long lastReport = start;
+        long count = 0;
+        try {
+            out.write(HEADER);
+            out.write('\n');
+            Future<?> previous = null;
+            String first = in.readLine();
+            boolean isHeader = first != null && first.startsWith("osm_id");
+            List<Row> chunk = readChunk(in, (first == null || isHeader) ? null : first);
+            while (!chunk.isEmpty()) {
+                evaluateChunk(chunk, time);
+                // wait for the previous chunk, so that only two are ever held
+                waitFor(previous);
+                List<Row> evaluated = chunk;
+                previous = writer.submit(() -> {
+                    writeChunk(evaluated, out);
+                    return null;
+                });
+                count += chunk.size();
+                long now = System.nanoTime();
+                if (isVerbose && now - lastReport > REPORT_INTERVAL) {
+                    report(count, now - start);
+                    lastReport = now;
+                }
+                chunk = readChunk(in, null);
+            }
+            waitFor(previous);
+            out.flush();
+        } finally {
+            writer.shutdownNow();
+        }
+        if (isVerbose) {
+            report(count, System.nanoTime() - start);
+        }
+        return count;
+    }
+
+    /**
+     * Read the next chunk of lines
+     *
+     * @param in reader of the input TSV
+     * @param first a line already read, null if none
+     * @return the Rows of the chunk, empty at the end of the input
+     */
+    private List<Row> readChunk(BufferedReader in, @Nullable String first) throws IOException {
+        List<Row> chunk = new ArrayList<>();
+        String line = (first != null) ? first : in.readLine();
+        while (line != null) {
+            if (!line.isEmpty()) {
+                chunk.add(new Row(line));
+            }
+            if (chunk.size() == chunkSize) {
+                break;
+            }
+            line = in.readLine();
+        }
+        return chunk;
+    }
+
+    /**
+     * Evaluate the features of a chunk
+     */
+    private void evaluateChunk(List<Row> chunk, LocalDateTime time) {
+        List<BatchEvaluator.Feature> features = new ArrayList<>(chunk.size());
+        for (Row row : chunk) {
+            if (row.feature != null) {
+                features.add(row.feature);
+            }
+        }
+        List<BatchEvaluator.Evaluation> evaluations = batch.evaluate(features, time, true);
+        int i = 0;
+        for (Row row : chunk) {
+            if (row.feature != null) {
+                row.evaluation = evaluations.get(i++);
+            }
+        }
+    }
+
+    /**
+     * Write the results of an evaluated chunk
+     */
+    private static void writeChunk(List<Row> chunk, Writer out) throws IOException {
+        StringBuilder b = new StringBuilder();
+        for (Row row : chunk) {
+            b.setLength(0);
+            b.append(row.id).append('\t');
+            BatchEvaluator.Evaluation evaluation = row.evaluation;
+            if (evaluation != null && evaluation.getError() == null) {
+                b.append(evaluation.getResult().getStatus()).append('\t');
+                Result nextEvent = evaluation.getNextEvent();
+                if (nextEvent != null && !nextEvent.isAlways() && nextEvent.getNextEventTime() != null) {
+                    b.append(nextEvent.getNextEventTime());
+                }
+                b.append('\t');
+            } else {
+                String error = (evaluation != null) ? evaluation.getError().getMessage() : row.error;
+                b.append("\t\t").append(clean(error));
+            }
+            b.append('\n');
+            out.append(b);
+        }
+    }
+
+    /** Helper for writeChunk(), make an error message fit in one column */
+    private static String clean(@Nullable String message) {
+        return (message == null) ? "error" : message.replaceAll("[\t\r\n]+", " ").trim();
+    }
+
+    /** Helper for run(), wait for the previous chunk to be written */
+    private static void waitFor(@Nullable Future<?> previous) throws IOException {
+        if (previous == null) {
+            return;
+        }
+        try {
+            previous.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /** Helper for run(), report the number of rows and rows per second */
+    private static void report(long count, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.println(String.format("%d rows in %.1f s, %.0f rows/s", count, seconds,
+                                         (seconds > 0) ? count / seconds : 0.0));
+    }
+
+    /**
+     * A line of the input, with either its Feature or the reason it could not
+     * be read
+     */
+    private static class Row {
+        final String                        id;
+        final BatchEvaluator.Feature        feature;
+        final String                        error;
+        BatchEvaluator.Evaluation           evaluation = null;
+
+        Row(String line) {
+            String[] columns = line.split("\t", -1);
+            this.id = columns[0];
+            BatchEvaluator.Feature parsed = null;
+            String message = null;
+            if (columns.length < 5) {
+                message = "Expected 5 columns, found " + columns.length;
+            } else {
+                try {
+                    // unknown coordinates are reported if the tag needs them
+                    double lat = (columns[2].isEmpty()) ? Double.NaN : Double.parseDouble(columns[2]);
+                    double lng = (columns[3].isEmpty()) ? Double.NaN : Double.parseDouble(columns[3]);
+                    String country = (columns[4].isEmpty()) ? null : columns[4];
+                    parsed = new BatchEvaluator.Feature(columns[0], columns[1], lat, lng, country);
+                } catch (NumberFormatException e) {
+                    message = "Invalid coordinates " + columns[2] + " " + columns[3];
+                }
+            }
+            this.feature = parsed;
+            this.error = message;
+        }
+    }
+}
@@ -334,6 +334,22 @@ public class Week {
         clean();
     }
 
+    /**
+     * Build the WeekDayRule in this week with an input rule on WeekDayRanges
+     * already known, see {@link RulePlan#getWeekdays()}
+     * 
+     * @param rule an input rule
+     * @param weekdayRange the WeekDayRanges of the rule
+     * @param restriction a WeekDayRange restriction, null if none
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    void build(Rule rule, List<WeekDayRange> weekdayRange, @Nullable WeekDayRange restriction)
+            throws OpeningHoursEvaluationException {
+        applyPreviousSpill();
+        update(rule, weekdayRange, restriction);
+        clean();
+    }
+
     /**
      * Update Week with a rule
      * 
@@ -352,6 +368,14 @@ public class Week {
             weekdayRange = new ArrayList<>();
             weekdayRange.add(allWeek);
         }
+        update(rule, weekdayRange, restriction);
+    }
+
+    /**
+     * Helper for update(), update Week with a rule on its WeekDayRanges
+     */
+    private void update(Rule rule, List<WeekDayRange> weekdayRange, @Nullable WeekDayRange restriction)
+            throws OpeningHoursEvaluationException {
         for (WeekDayRange weekdays : weekdayRange) {
             // restriction taken from previous YearRange, WeekRange, DateRange
             WeekDayRange processed = processRestriction(weekdays, restriction);
@@ -544,8 +568,20 @@ public class Week {
      * @return Result that can be rad
      */
     private Result processDifferingEvent(WeekDayRule day, TimeRange timerange, boolean isNext) {
+        return processDifferingEvent(day.getDefDate(), timerange, isNext);
+    }
+
+    /**
+     * Process to return a type of special Result containing open/close next
+     * event, used in getting next differing event
+     * 
+     * @param date the date of the day where the TimeRange is found
+     * @param timerange a desired TimeRange
+     * @param isNext true if look for next differing event, false otherwise
+     * @return Result that can be read
+     */
+    static Result processDifferingEvent(LocalDate date, TimeRange timerange, boolean isNext) {
         Result result = new Result(timerange);
-        LocalDate date = day.getDefDate();
         int timestamp;
         if (isNext) {
             timestamp = timerange.getStart();
@@ -586,6 +622,26 @@ public class Week {
         } while (current.getWeekDay() != target);
     }
 
+    /**
+     * Clean this Week and take an interned snapshot of each of its days, see
+     * {@link DaySchedule#intern(DaySchedule)}. Identical days of this Week,
+     * or of any other Week, share one DaySchedule.
+     *
+     * @return the DaySchedule of each day of this Week, from its start
+     *      WeekDay to its end WeekDay
+     */
+    public List<DaySchedule> getDaySchedules() {
+        clean();
+        List<DaySchedule> result = new ArrayList<>();
+        WeekDayRule current = weekDayStorage.get(startWeekDay);
+        WeekDay target = getNextWeekDay(endWeekDay);
+        do {
+            result.add(DaySchedule.intern(new DaySchedule(current)));
+            current = current.getNextDayRule();
+        } while (current.getWeekDay() != target);
+        return result;
+    }
+
     /**
      * Reset this Week by removing all current WeekDayRule and filling it with
      * empty ones
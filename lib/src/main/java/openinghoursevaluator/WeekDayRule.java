@@ -2,8 +2,6 @@ package openinghoursevaluator;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
 import java.time.temporal.ChronoField;
 import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
@@ -12,8 +10,6 @@ import java.util.List;
 
 import javax.annotation.Nullable;
 
-import org.shredzone.commons.suncalc.SunTimes;
-
 import ch.poole.openinghoursparser.Month;
 import ch.poole.openinghoursparser.Nth;
 import ch.poole.openinghoursparser.Rule;
@@ -21,7 +17,6 @@ import ch.poole.openinghoursparser.TimeSpan;
 import ch.poole.openinghoursparser.VariableTime;
 import ch.poole.openinghoursparser.WeekDay;
 import ch.poole.openinghoursparser.WeekDayRange;
-import io.github.goodudetheboy.worldholidaydates.holidaydata.Holiday;
 
 public class WeekDayRule {
     public static final int INVALID_NUM = Integer.MIN_VALUE;
@@ -140,6 +135,13 @@ public class WeekDayRule {
         return isDummy;
     }
 
+    /**
+     * @return the list of Rules overridden during building of this {@link WeekDayRule}
+     */
+    public List<Rule> getOverriddenRules() {
+        return overriddenRules;
+    }
+
     /**
      * Set the current weekday of this weekday
      * 
@@ -234,9 +236,9 @@ public class WeekDayRule {
         }
         if (rule.getHolidays() != null) {
             HolidayManager holidayManager = new HolidayManager(geolocation);
-            Holiday holiday = null;
+            HolidayManager.Match holiday = null;
             for (ch.poole.openinghoursparser.Holiday defHoliday : rule.getHolidays()) {
-                holiday = holidayManager.processHoliday(defDate, defHoliday);
+                holiday = holidayManager.findHoliday(defDate, defHoliday);
                 if (holiday != null) {
                     break;
                 }
@@ -297,12 +299,8 @@ public class WeekDayRule {
      * @param holiday
      * @return
      */
-    private String processHolidayComment(String comment, Holiday holiday) {
-        if (holiday.getName() != null) {
-            return (comment == null) ? holiday.getName().get("en") : comment;
-        } else {
-            return (comment == null) ? HolidayManager.DEFAULT_HOLIDAY_COMMENT : comment;
-        }
+    private String processHolidayComment(String comment, HolidayManager.Match holiday) {
+        return (comment == null) ? holiday.comment : comment;
     }
 
     /**
@@ -313,7 +311,7 @@ public class WeekDayRule {
      * @param holiday the holiday definition
      * @throws OpeningHoursEvaluationException
      */
-    private void addHolidayRule(Rule rule, Holiday holiday) throws OpeningHoursEvaluationException {
+    private void addHolidayRule(Rule rule, HolidayManager.Match holiday) throws OpeningHoursEvaluationException {
         if (holiday == null) {
             return;
         }
@@ -384,36 +382,29 @@ public class WeekDayRule {
      */
     private int getTimeOfEvent(VariableTime varTime, Geolocation geolocation, int dateOffset) {
         int option = 1;
-        SunTimes events = null;
-        ZoneId zoneId = geolocation.getTimeZone();
+        boolean isTwilight = false;
         LocalDate adjusted = DateManager.getOffsetDate(defDate, dateOffset);
-        ZonedDateTime zonedDate = adjusted.atStartOfDay(zoneId);
-        double[] coor = geolocation.getCoordinates();
         switch (varTime.getEvent()) {
             case SUNRISE:
                 option = 0;
             case SUNSET:
-                events = SunTimes.compute()
-                    .on(zonedDate)   // set a date
-                    .at(coor[0], coor[1])   // set a location
-                    .execute();     // get the results
                 break;
             case DAWN:
                 option = 0;
             case DUSK:
-                events = SunTimes.compute()
-                    .twilight(SunTimes.Twilight.CIVIL)
-                    .on(zonedDate)
-                    .at(coor[0], coor[1])
-                    .execute();
+                isTwilight = true;
                 break;
+            default:
+                throw new IllegalArgumentException("Event of day calculator not initialized, unexpected");
         }
-        if (events == null) {
-            throw new IllegalArgumentException("Event of day calculator not initialized, unexpected");
+        int[] events = SunEventCache.getDefault().getRiseAndSet(geolocation.getLatitude(),
+                geolocation.getLongitude(), adjusted, geolocation.getTimeZone(), isTwilight);
+        int time = events[option == 1 ? 1 : 0];
+        if (time == INVALID_NUM) {
+            throw new IllegalArgumentException("No " + varTime.getEvent() + " on " + adjusted
+                                                + " at this location");
         }
-        ZonedDateTime time = (option == 1) ? events.getSet()
-                                           : events.getRise();
-        return Utils.timeInMinute(time.toLocalDateTime()) + varTime.getOffset() + 1;
+        return time + varTime.getOffset() + 1;
     }
 
     /**
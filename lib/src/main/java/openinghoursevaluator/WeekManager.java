@@ -7,7 +7,9 @@ import ch.poole.openinghoursparser.WeekDay;
 import ch.poole.openinghoursparser.WeekRange;
 
 public class WeekManager {
-    
+    // shared instance, a WeekManager has no state
+    static final WeekManager SHARED = new WeekManager();
+
     public WeekManager() {
         // empty
     }
@@ -21,9 +23,20 @@ public class WeekManager {
      *      week range
      */
     public boolean processWeekRange(WeekRange weekRange, Week week) {
+        return processWeekRange(weekRange, week.getWeekOfYear());
+    }
+
+    /**
+     * Process WeekRange to see if it is applicable to input week number
+     * 
+     * @param weekRange input WeekRange
+     * @param weekNum input week number
+     * @return if the week number is applicable according to weekRange a.k.a
+     *      inside week range
+     */
+    public boolean processWeekRange(WeekRange weekRange, int weekNum) {
         int start = weekRange.getStartWeek();
         int end = weekRange.getEndWeek();
-        int weekNum = week.getWeekOfYear();
 
         if (end != WeekRange.UNDEFINED_WEEK) {
             int interval = weekRange.getInterval();
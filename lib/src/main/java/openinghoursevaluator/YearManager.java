@@ -3,6 +3,8 @@ package openinghoursevaluator;
 import ch.poole.openinghoursparser.YearRange;
 
 public class YearManager {
+    // shared instance, a YearManager has no state
+    static final YearManager SHARED = new YearManager();
 
     public YearManager() {
         // empty
@@ -19,10 +21,23 @@ public class YearManager {
      */
     public boolean processYearRange(YearRange yearRange, Week week)
             throws OpeningHoursEvaluationException {
+        return processYearRange(yearRange, week.getYear());
+    }
+
+    /**
+     * Process YearRange to see if it is applicable to input year
+     * 
+     * @param yearRange input YearRange
+     * @param yearNum input year
+     * @return if the year is applicable according to weekRange a.k.a inside
+     *      the year range
+     * @throws OpeningHoursEvaluationException when there's problem during evaluation
+     */
+    public boolean processYearRange(YearRange yearRange, int yearNum)
+            throws OpeningHoursEvaluationException {
         checkError(yearRange);
         int start = yearRange.getStartYear();
         int end = yearRange.getEndYear();
-        int yearNum = week.getYear();
         if (end != YearRange.UNDEFINED_YEAR) {
             int interval = yearRange.getInterval();
             if (interval == 0) {
@@ -0,0 +1,231 @@
+package openinghoursevaluator;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.temporal.WeekFields;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import ch.poole.openinghoursparser.DateRange;
+import ch.poole.openinghoursparser.DateWithOffset;
+import ch.poole.openinghoursparser.Rule;
+import ch.poole.openinghoursparser.TimeSpan;
+import ch.poole.openinghoursparser.YearRange;
+
+/**
+ * A table of the built days of whole years, for Rules whose schedule depends
+ * on the date but not on variable times, that is on months, dates, week
+ * numbers, years, easter or holidays.
+ * <p>
+ * Each day of a year is stored as the ID of a template in a dictionary of the
+ * distinct {@link DaySchedule} built so far, so that a year takes 732 bytes
+ * instead of a DaySchedule per day. Seasonal tags usually have only a handful
+ * of distinct days. Years are filled lazily, one built week at a time, as
+ * queries reach them, so that a single query never builds a whole year. At
+ * most {@link #YEARS_KEPT} years are kept.
+ * <p>
+ * When the Rules have no year (on its own or in a date), easter or holiday
+ * selector, a year is built the same as any other year starting on the same
+ * weekday, with the same leap-ness and after a year with the same leap-ness.
+ * Such years share one table, so that there are at most 28 tables to fill
+ * whatever the years queried, see {@link #isPeriodic()}.
+ * <p>
+ * This class is thread-safe. Weeks are built by the caller, outside of any
+ * lock, then stored with {@link #putWeek(LocalDate, DaySchedule[])}.
+ */
+class YearTable {
+    // enough for a calendar cycle, or for every kind of year
+    static final int YEARS_KEPT = RuleBoundaries.CALENDAR_CYCLE_YEARS;
+
+    private static final int    DAYS_PER_YEAR   = 366;
+    // ID of a day not built yet, other IDs are 1 + index of the template
+    private static final short  NOT_BUILT       = 0;
+
+    private final boolean                       periodic;
+    // IDs of the days of each year, keyed by getKey()
+    private final LruCache<Integer, short[]>    years       = new LruCache<>(YEARS_KEPT);
+    // distinct days built so far, guarded by this
+    private final List<DaySchedule>             templates   = new ArrayList<>();
+    private final Map<DaySchedule, Short>       templateIds = new HashMap<>();
+    private long                                builtWeeks  = 0;
+
+    /**
+     * Constructor for a YearTable, see {@link #isApplicable(List, Locale)}
+     *
+     * @param rules the Rules whose days are stored
+     */
+    YearTable(List<Rule> rules) {
+        boolean isPeriodic = true;
+        for (Rule rule : rules) {
+            isPeriodic &= rule.getYears() == null && rule.getHolidays() == null && !hasVariableOrYearDate(rule);
+        }
+        this.periodic = isPeriodic;
+    }
+
+    /**
+     * Check if the days built for a list of Rules can be stored in a
+     * YearTable, that is if no Rule has variable times, which differ every
+     * day and with the geolocation, and a day built within a Monday to Sunday
+     * week is the same as the day built on its own. The latter is not the case
+     * for week numbers in a locale whose weeks don't start on Monday, as every
+     * day of a built week takes the week number of the week.
+     *
+     * @param rules a list of Rules
+     * @param locale the locale of the geolocation
+     * @return true if the Rules have no variable times, and no week numbers
+     *      unless weeks of the locale start on Monday
+     */
+    static boolean isApplicable(List<Rule> rules, Locale locale) {
+        boolean mondayFirst = WeekFields.of(locale).getFirstDayOfWeek() == DayOfWeek.MONDAY;
+        for (Rule rule : rules) {
+            if (rule.getWeeks() != null && !mondayFirst) {
+                return false;
+            }
+            if (rule.getTimes() != null) {
+                for (TimeSpan timespan : rule.getTimes()) {
+                    if (timespan.getStartEvent() != null || timespan.getEndEvent() != null) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper for the constructor, check if a Rule has variable dates or
+     * dates with a year, such as "2030 Jan-Feb"
+     */
+    private static boolean hasVariableOrYearDate(Rule rule) {
+        if (rule.getDates() != null) {
+            for (DateRange dateRange : rule.getDates()) {
+                DateWithOffset end = dateRange.getEndDate();
+                if (isVariableOrHasYear(dateRange.getStartDate()) || (end != null && isVariableOrHasYear(end))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Helper for hasVariableOrYearDate(), check a date of a DateRange */
+    private static boolean isVariableOrHasYear(DateWithOffset date) {
+        return date.getVarDate() != null || date.getYear() != YearRange.UNDEFINED_YEAR;
+    }
+
+    /**
+     * @return true if years of the same kind share one table, as the Rules
+     *      have no year (on its own or in a date), easter or holiday selector
+     */
+    boolean isPeriodic() {
+        return periodic;
+    }
+
+    /**
+     * Get the key of the table of a year: the year itself, or its kind if
+     * {@link #isPeriodic()}
+     */
+    private int getKey(int year) {
+        if (!periodic) {
+            return year;
+        }
+        int firstWeekDay = LocalDate.of(year, 1, 1).getDayOfWeek().ordinal();
+        return (firstWeekDay * 2 + (Year.isLeap(year) ? 1 : 0)) * 2 + (Year.isLeap(year - 1L) ? 1 : 0);
+    }
+
+    /**
+     * Get a built day
+     *
+     * @param date the date of the day
+     * @return the DaySchedule of the day, null if it has not been built yet
+     */
+    @Nullable
+    synchronized DaySchedule getDay(LocalDate date) {
+        short[] ids = years.get(getKey(date.getYear()));
+        if (ids == null) {
+            return null;
+        }
+        short id = ids[date.getDayOfYear() - 1];
+        return (id == NOT_BUILT) ? null : templates.get(id - 1);
+    }
+
+    /**
+     * Get a built week
+     *
+     * @param monday the Monday of the week
+     * @return an unmodifiable List of 7 DaySchedule, starting from Monday,
+     *      null if any day has not been built yet
+     */
+    @Nullable
+    synchronized List<DaySchedule> getWeek(LocalDate monday) {
+        DaySchedule[] week = new DaySchedule[7];
+        for (int i=0; i < week.length; i++) {
+            week[i] = getDay(monday.plusDays(i));
+            if (week[i] == null) {
+                return null;
+            }
+        }
+        return Collections.unmodifiableList(Arrays.asList(week));
+    }
+
+    /**
+     * Store the days of a built week, each replaced by an equal template if
+     * one was built before
+     *
+     * @param monday the Monday of the week
+     * @param week the 7 DaySchedule of the week, starting from Monday
+     * @return an unmodifiable List of the 7 stored DaySchedule
+     */
+    synchronized List<DaySchedule> putWeek(LocalDate monday, DaySchedule[] week) {
+        builtWeeks++;
+        DaySchedule[] stored = new DaySchedule[7];
+        for (int i=0; i < stored.length; i++) {
+            stored[i] = putDay(monday.plusDays(i), week[i]);
+        }
+        return Collections.unmodifiableList(Arrays.asList(stored));
+    }
+
+    /** Helper for putWeek(), store a day, returning its template */
+    private DaySchedule putDay(LocalDate date, DaySchedule day) {
+        Short id = templateIds.get(day);
+        if (id == null) {
+            if (templates.size() == Short.MAX_VALUE) {
+                // no more IDs, the day is only returned
+                return day;
+            }
+            templates.add(day);
+            id = (short) templates.size();
+            templateIds.put(day, id);
+        }
+        int key = getKey(date.getYear());
+        short[] ids = years.get(key);
+        if (ids == null) {
+            ids = new short[DAYS_PER_YEAR];
+            years.put(key, ids);
+        }
+        ids[date.getDayOfYear() - 1] = id;
+        return templates.get(id - 1);
+    }
+
+    /**
+     * @return the number of distinct days built so far
+     */
+    synchronized int getTemplateCount() {
+        return templates.size();
+    }
+
+    /**
+     * @return the number of weeks built and stored so far
+     */
+    synchronized long getBuiltWeekCount() {
+        return builtWeeks;
+    }
+}
@@ -0,0 +1,132 @@
+package openinghoursevaluator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ch.poole.openinghoursparser.OpeningHoursParseException;
+
+/**
+ * Stress tests of CompiledOpeningHours shared between threads, comparing
+ * with the same queries answered by a single thread
+ */
+public class ConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 2;
+
+    /**
+     * A query on a shared CompiledOpeningHours
+     */
+    private static class Query {
+        final CompiledOpeningHours  shared;
+        final LocalDateTime         time;
+        final int                   type;
+        String                      expected;
+
+        Query(CompiledOpeningHours shared, LocalDateTime time, int type) {
+            this.shared = shared;
+            this.time = time;
+            this.type = type;
+        }
+
+        /** Answer this query on a CompiledOpeningHours, as a string */
+        String answer(CompiledOpeningHours compiled) {
+            try {
+                switch (type) {
+                case 0:     return compiled.evaluate(time).toString();
+                case 1:     return compiled.checkStatusFast(CompiledOpeningHours.toEpochMinute(time)).toString();
+                case 2:     return compiled.getNextEvent(time).toString();
+                default:    return compiled.getLastEvent(time).toString();
+                }
+            } catch (OpeningHoursEvaluationException | RuntimeException e) {
+                return e.getClass().getName();
+            }
+        }
+    }
+
+    /**
+     * Many threads sharing one CompiledOpeningHours per tag, with caches small
+     * enough to be evicted all the time, must give the same answers as a
+     * single thread
+     */
+    @Test
+    public void sharedCompiledOpeningHoursTest() throws IOException, OpeningHoursParseException, InterruptedException {
+        List<String> tags = new ArrayList<>();
+        for (String corpus : new String[] { "timepoint", "weekday", "week", "month", "year" }) {
+            tags.addAll(Files.readAllLines(Paths.get("test-data/oh/" + corpus + ".txt-oh"), StandardCharsets.UTF_8));
+        }
+        tags.add("easter -2 days-easter +1 day 10:00-12:00; Dec 24-Jan 02 off");
+        tags.add("sunrise-sunset; Sa dawn-dusk \"weekend\"");
+        tags.add("Mo-Fr 08:00-17:00; PH off; SH 08:00-12:00");
+
+        Random random = new Random(42);
+        List<Query> queries = new ArrayList<>();
+        for (String tag : tags) {
+            CompiledOpeningHours reference;
+            CompiledOpeningHours shared;
+            try {
+                reference = CompiledOpeningHours.builder().setOpeningHoursTag(tag)
+                                .setCacheOptions(0, 0, TimeUnit.MILLISECONDS).build();
+                shared = CompiledOpeningHours.builder().setOpeningHoursTag(tag)
+                                .setCacheOptions(7, 0, TimeUnit.MILLISECONDS).build();
+            } catch (OpeningHoursParseException e) {
+                continue;
+            }
+            for (int i=0; i < 12; i++) {
+                LocalDateTime time = LocalDateTime.of(2021, 1, 1, 0, 0).plusMinutes(random.nextInt(2 * 365 * 1440));
+                Query query = new Query(shared, time, i % 4);
+                query.expected = query.answer(reference);
+                queries.add(query);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int t=0; t < THREADS; t++) {
+                List<Query> shuffled = new ArrayList<>(queries);
+                Collections.shuffle(shuffled, new Random(t));
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    List<String> wrong = new ArrayList<>();
+                    for (int round=0; round < ROUNDS; round++) {
+                        for (Query query : shuffled) {
+                            String actual = query.answer(query.shared);
+                            if (!query.expected.equals(actual)) {
+                                wrong.add(query.time + " " + query.type + ": " + actual + " instead of " + query.expected);
+                            }
+                        }
+                    }
+                    return wrong;
+                }));
+            }
+            start.countDown();
+            for (Future<List<String>> future : futures) {
+                assertEquals(Collections.emptyList(), future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new AssertionError(e.getCause());
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+}
@@ -6,12 +6,33 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
 import ch.poole.openinghoursparser.OpeningHoursParseException;
+import ch.poole.openinghoursparser.OpeningHoursParser;
+import io.github.goodudetheboy.worldholidaydates.holidaydata.Country;
+import io.github.goodudetheboy.worldholidaydates.holidaydata.Holiday;
 import io.github.goodudetheboy.worldholidaydates.holidaydata.HolidayData;
 
 public class UnitTest {
@@ -46,6 +67,51 @@ public class UnitTest {
         assertEquals(answerTime, InputTest.getLastEvent("14:00-18:00 unknown", time).getLastEventTime());
     }
 
+    /**
+     * Test for open next of a seasonal tag, where closed weeks out of season
+     * should not be built
+     */
+    @Test
+    public void seasonalOpenNextTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator("Apr-Oct Mo-Fr 10:00-18:00", false);
+        LocalDateTime time = LocalDateTime.parse("2021-11-02T12:00");
+        assertEquals(LocalDateTime.parse("2022-04-01T10:00"), evaluator.getNextEvent(time).getNextEventTime());
+        assertEquals(LocalDateTime.parse("2021-10-29T18:00"), evaluator.getLastEvent(time).getLastEventTime());
+        assertTrue(evaluator.getCompiledOpeningHours().getYearTable().getBuiltWeekCount() < 10);
+    }
+
+    /**
+     * Test for open next and open last far from the input time, found from
+     * the boundaries of the selectors without building every day in between
+     */
+    @Test
+    public void farOpenNextTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator("2030 Jan 01-2030 Feb 28 open", false);
+        assertEquals(Status.OPEN, evaluator.checkStatus("2030-02-28T23:59"));
+        assertEquals(Status.CLOSED, evaluator.checkStatus("2030-03-01T00:00"));
+        LocalDateTime time = LocalDateTime.parse("2024-06-01T12:00");
+        assertEquals(LocalDateTime.parse("2030-01-01T00:00"), evaluator.getNextEvent(time).getNextEventTime());
+        time = LocalDateTime.parse("2036-06-01T12:00");
+        assertEquals(LocalDateTime.parse("2030-02-28T23:59"), evaluator.getLastEvent(time).getLastEventTime());
+        assertTrue(evaluator.getCompiledOpeningHours().getYearTable().getBuiltWeekCount() < 10);
+        assertTrue(evaluator.getNextEvent(time).isAlways());
+    }
+
+    /**
+     * Test for a date range with a year only at its start, which ends in that
+     * year instead of the year being evaluated
+     */
+    @Test
+    public void yearAtStartDateRangeTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator("2030 Jan-Feb open", false);
+        assertEquals(Status.OPEN, evaluator.evaluate("2030-01-01T00:00").getStatus());
+        assertEquals(Status.OPEN, evaluator.evaluate("2030-02-28T23:59").getStatus());
+        assertEquals(Status.CLOSED, evaluator.evaluate("2030-03-01T00:00").getStatus());
+        assertEquals(Status.CLOSED, evaluator.evaluate("2029-01-10T12:00").getStatus());
+        assertEquals(Status.CLOSED, evaluator.evaluate("2031-01-10T12:00").getStatus());
+        assertEquals(Status.CLOSED, evaluator.evaluate("2047-01-10T12:00").getStatus());
+    }
+
     /**
      * Test for variable time test
      */
@@ -56,6 +122,27 @@ public class UnitTest {
         assertEquals(Status.CLOSED, evaluator.checkStatus("2021-06-13T05:32"));
     }
 
+    /**
+     * Test for the shared cache of variable times
+     */
+    @Test
+    public void sunEventCacheTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        SunEventCache previous = SunEventCache.getDefault();
+        try {
+            SunEventCache.setDefault(new SunEventCache(100, SunEventCache.DEFAULT_QUANTIZATION));
+            LruCache<?, int[]> cache = SunEventCache.getDefault().getCache();
+            OpeningHoursEvaluator e1 = new OpeningHoursEvaluator("sunset-sunrise", false);
+            assertEquals(Status.OPEN, e1.checkStatus("2021-06-13T05:31"));
+            long misses = cache.getMissCount();
+            OpeningHoursEvaluator e2 = new OpeningHoursEvaluator("sunrise-sunset", false);
+            assertEquals(Status.CLOSED, e2.checkStatus("2021-06-13T05:31"));
+            assertEquals(misses, cache.getMissCount());
+            assertTrue(cache.getHitCount() > 0);
+        } finally {
+            SunEventCache.setDefault(previous);
+        }
+    }
+
     /**
      * Test for testing variable time of countries with different coordinates
      */
@@ -99,6 +186,33 @@ public class UnitTest {
     public void constructorTest() throws OpeningHoursParseException {
         OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator("week 1", false, 43.1566, -77.6088, Locale.US);
         assertEquals("US", evaluator.getGeolocation().getCountry());
+        // compiled once, with the geolocation of the constructor
+        assertEquals("US", evaluator.getCompiledOpeningHours().getGeolocation().getCountry());
+    }
+
+    /**
+     * Test that evaluating does not change the compiled Rules, which are
+     * shared between threads
+     */
+    @Test
+    public void compiledRulesUnchangedTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        CompiledOpeningHours compiled = CompiledOpeningHours.builder()
+                                            .setOpeningHoursTag("easter -2 days-easter +1 day 10:00-12:00").build();
+        String before = compiled.getCompiledRules().toString();
+        compiled.checkStatus(LocalDateTime.parse("2021-04-03T11:00"));
+        compiled.checkStatus(LocalDateTime.parse("2022-04-16T11:00"));
+        assertEquals(before, compiled.getCompiledRules().toString());
+    }
+
+    /**
+     * Test for a geolocation with a known timezone
+     */
+    @Test
+    public void knownTimeZoneTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        Geolocation geolocation = new Geolocation(41.8781, -87.6298, "US", ZoneId.of("America/Chicago"));
+        assertEquals(ZoneId.of("America/Chicago"), geolocation.getTimeZone());
+        OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator("sunrise-sunset", false, geolocation);
+        assertEquals(Status.OPEN, evaluator.checkStatus("2021-07-22T06:00"));
     }
 
     /**
@@ -118,6 +232,557 @@ public class UnitTest {
         // squashed week
         actual = evaluator.getSquashedWeekData(inputTime).getStartWeekDayRule().toString();
         assertEquals(expected, actual);
+        assertEquals(expected, evaluator.getSquashedWeekData(inputTime).toString().split(Utils.LINE_SEPARATOR)[0]);
+    }
+
+    /**
+     * A test for identical days sharing one interned DaySchedule, within a
+     * week and across tags
+     */
+    @Test
+    public void dayScheduleInternTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        LocalDate date = LocalDate.parse("2021-07-01");
+        List<DaySchedule> week = new OpeningHoursEvaluator("Mo-Fr 10:00-20:00", false)
+                                    .getCompiledOpeningHours().getWeekSchedule(date);
+        for (int i=1; i < 5; i++) {
+            assertTrue(week.get(0) == week.get(i));
+        }
+        assertTrue(week.get(5) == week.get(6));
+        assertTrue(week.get(0) != week.get(5));
+
+        List<DaySchedule> other = new OpeningHoursEvaluator("Apr-Oct Mo-Fr 10:00-20:00", false)
+                                    .getCompiledOpeningHours().getWeekSchedule(date);
+        assertTrue(week.get(6) == other.get(6));
+
+        // equal snapshots interned concurrently all get the shared one
+        DaySchedule weekday = week.get(0);
+        List<DaySchedule> interned = Collections.nCopies(64, weekday).parallelStream()
+            .map(day -> DaySchedule.intern(new DaySchedule(day.getOpeningTimes(), day.getOverriddenRules())))
+            .collect(Collectors.toList());
+        for (DaySchedule day : interned) {
+            assertTrue(day == weekday);
+        }
+    }
+
+    /**
+     * A test for checking that a compiled opening hours gives the same answers
+     * as the evaluator, and is not affected by later changes to the evaluator
+     */
+    @Test
+    public void compiledOpeningHoursTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator("Mo-Fr 10:00-20:00; 13:00-15:00 off", false);
+        CompiledOpeningHours compiled = evaluator.getCompiledOpeningHours();
+        LocalDateTime inputTime = LocalDateTime.parse("2021-07-02T14:00");
+        assertEquals(Status.CLOSED, compiled.checkStatus(inputTime));
+        assertEquals(evaluator.getNextEvent(inputTime).toString(), compiled.getNextEvent(inputTime).toString());
+        assertEquals(evaluator.getLastEvent(inputTime).toString(), compiled.getLastEvent(inputTime).toString());
+        assertEquals("10:00-13:00(opening) 15:00-20:00(opening) ",
+                     compiled.getWeekSchedule(inputTime.toLocalDate()).get(0).toString());
+        assertEquals("", compiled.getDaySchedule(LocalDateTime.parse("2021-07-03T00:00").toLocalDate()).toString());
+
+        evaluator.setOpeningHoursTag("24/7");
+        assertEquals(Status.OPEN, evaluator.checkStatus(inputTime));
+        assertEquals(Status.CLOSED, compiled.checkStatus(inputTime));
+    }
+
+    /**
+     * A test for evaluating many times at once, compared with evaluating
+     * them one by one
+     */
+    @Test
+    public void evaluateAllTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator("Mo-Fr 08:00-12:00,13:00-17:30; Sa 22:00-02:00; PH off", false);
+        LocalDateTime from = LocalDateTime.parse("2021-12-27T00:00");
+        LocalDateTime to = LocalDateTime.parse("2022-01-10T00:00");
+        Status[] statuses = evaluator.evaluateAll(from, to, Duration.ofMinutes(15));
+        assertEquals(14 * 24 * 4, statuses.length);
+        SortedSet<LocalDateTime> inputTimes = new TreeSet<>();
+        int i = 0;
+        for (LocalDateTime time = from; time.isBefore(to); time = time.plusMinutes(15), i++) {
+            assertEquals(time.toString(), evaluator.checkStatus(time), statuses[i]);
+            if (i % 7 == 0) {
+                inputTimes.add(time);
+            }
+        }
+        Status[] sparse = evaluator.evaluateAll(inputTimes);
+        i = 0;
+        for (LocalDateTime time : inputTimes) {
+            assertEquals(evaluator.checkStatus(time), sparse[i++]);
+        }
+    }
+
+    /**
+     * A test for checking the status at epoch minutes, compared with checking
+     * it at LocalDateTime, including before 1970 and across table slots
+     */
+    @Test
+    public void checkStatusFastTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        // depending on the date, so that days go through the table of slots
+        OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator("Jan-Jun Mo-Fr 08:00-12:00; Sa 22:00-02:00 unknown",
+                                                                    false);
+        assertTrue(!evaluator.getCompiledOpeningHours().isWeekly());
+        LocalDateTime[] starts = { LocalDateTime.parse("2021-06-25T00:00"), LocalDateTime.parse("1969-12-28T00:00") };
+        for (LocalDateTime start : starts) {
+            for (LocalDateTime time = start; time.isBefore(start.plusDays(10)); time = time.plusMinutes(13)) {
+                long epochMinute = CompiledOpeningHours.toEpochMinute(time);
+                assertEquals(time.toString(), evaluator.checkStatus(time), evaluator.checkStatusFast(epochMinute));
+            }
+        }
+        // 2022-10-26, a Wednesday in the same slot as 2021-06-01, a Tuesday
+        LocalDateTime time = LocalDateTime.parse("2021-06-01T09:00");
+        long epochMinute = CompiledOpeningHours.toEpochMinute(time);
+        long aliased = epochMinute + CompiledOpeningHours.FAST_TABLE_SIZE * 1440L;
+        assertEquals(Status.OPEN, evaluator.checkStatusFast(epochMinute));
+        assertEquals(Status.CLOSED, evaluator.checkStatusFast(aliased));
+        assertEquals(Status.OPEN, evaluator.checkStatusFast(epochMinute));
+    }
+
+    /**
+     * A test for the bitmap snapshot of a day, compared with the built days
+     */
+    @Test
+    public void dayBitmapTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        String[] tags = { "Mo-Fr 08:00-12:00,13:00-17:30; Sa 22:00-02:00 unknown \"late\"",
+                          "10:00-20:00; 13:00-15:00 off \"lunch\" || \"call us\"",
+                          "Mo-Sa 09:00-18:00, We 12:00-14:00 unknown; Su 10:00+" };
+        for (String tag : tags) {
+            CompiledOpeningHours compiled = new OpeningHoursEvaluator(tag, false).getCompiledOpeningHours();
+            for (LocalDate date = LocalDate.parse("2021-07-05"); date.isBefore(LocalDate.parse("2021-07-12")); date = date.plusDays(1)) {
+                DaySchedule schedule = compiled.getDaySchedule(date);
+                DayBitmap bitmap = new DayBitmap(schedule);
+                for (int minute = 0; minute < 1440; minute++) {
+                    assertEquals(tag + " " + date + " " + minute, schedule.getStatus(minute), bitmap.getStatus(minute));
+                }
+                assertEquals(bitmap, new DayBitmap(schedule));
+            }
+        }
+    }
+
+    /**
+     * A test for evaluating many features at once, compared with evaluating
+     * them one by one, in small chunks so that groups span several chunks
+     */
+    @Test
+    public void batchEvaluatorTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        List<BatchEvaluator.Feature> features = new ArrayList<>();
+        String[] tags = { "Mo-Fr 08:00-12:00,13:00-17:30", "sunrise-sunset", "Mo-Fr 09:00-18:00; PH off",
+                          "Mo-Fr 25:00-26:00", "24/7" };
+        for (int i=0; i < 40; i++) {
+            features.add(new BatchEvaluator.Feature("n" + i, tags[i % tags.length], 10.0 + i % 3, 106.0,
+                                                    (i % 2 == 0) ? "VN" : "US"));
+        }
+        LocalDateTime time = LocalDateTime.parse("2021-09-02T10:00");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BatchEvaluator batch = new BatchEvaluator(pool, new EvaluatorFactory(10), false, 7);
+            List<BatchEvaluator.Evaluation> evaluations = batch.evaluate(features, time);
+            assertEquals(features.size(), evaluations.size());
+            for (int i=0; i < features.size(); i++) {
+                BatchEvaluator.Feature feature = features.get(i);
+                BatchEvaluator.Evaluation evaluation = evaluations.get(i);
+                assertTrue(feature == evaluation.getFeature());
+                if (feature.getOpeningHours().equals("Mo-Fr 25:00-26:00")) {
+                    assertNull(evaluation.getResult());
+                    assertTrue(evaluation.getError() instanceof OpeningHoursParseException);
+                    continue;
+                }
+                assertNull(evaluation.getError());
+                Geolocation geolocation = new Geolocation(feature.getLatitude(), feature.getLongitude(),
+                                                          feature.getCountry());
+                OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator(feature.getOpeningHours(), false,
+                                                                            geolocation);
+                assertEquals(feature.getId(), evaluator.evaluate(time).toString(),
+                             evaluation.getResult().toString());
+            }
+            List<String> ids = new ArrayList<>();
+            batch.evaluate(features.stream(), time, evaluation -> ids.add(evaluation.getFeature().getId()));
+            assertEquals(features.stream().map(BatchEvaluator.Feature::getId).collect(Collectors.toList()), ids);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * A test for the TSV pipeline, in chunks of 2 lines so that writing
+     * overlaps with evaluating
+     */
+    @Test
+    public void tsvPipelineTest() throws IOException {
+        String input = "osm_id\topening_hours\tlat\tlon\tcountry\n"
+                     + "n1\tMo-Fr 08:00-12:00\t10.8\t106.6\tVN\n"
+                     + "n2\tMo-Fr 25:00-26:00\t10.8\t106.6\tVN\n"
+                     + "n3\t24/7\t\t\t\n"
+                     + "n4\tMo-Fr 08:00-12:00\n"
+                     + "n5\tSa 10:00-12:00 \"weekend\"\t52.5\tabc\tDE\n"
+                     + "n6\tMo-Fr 08:00-12:00\t48.1\t11.6\tDE\n"
+                     + "n7\tsunrise-sunset\t\t\tDE\n";
+        StringWriter output = new StringWriter();
+        BatchEvaluator batch = new BatchEvaluator(ForkJoinPool.commonPool(), new EvaluatorFactory(10), false, 2);
+        long count = new TsvPipeline(batch, 2, false).run(new BufferedReader(new StringReader(input)), output,
+                                                          LocalDateTime.parse("2021-09-02T10:00"));
+        assertEquals(7, count);
+        String[] lines = output.toString().split("\n");
+        assertEquals(8, lines.length);
+        assertEquals(TsvPipeline.HEADER, lines[0]);
+        assertEquals("n1\topening\t2021-09-02T12:00\t", lines[1]);
+        assertTrue(lines[2].startsWith("n2\t\t\t"));
+        assertEquals("n3\topening\t\t", lines[3]);
+        assertEquals("n4\t\t\tExpected 5 columns, found 2", lines[4]);
+        assertEquals("n5\t\t\tInvalid coordinates 52.5 abc", lines[5]);
+        assertEquals("n6\topening\t2021-09-02T12:00\t", lines[6]);
+        assertEquals("n7\t\t\tMissing coordinates, needed for variable times", lines[7]);
+    }
+
+    /**
+     * A test for the columnar results of batches, written to a file and read
+     * back
+     */
+    @Test
+    public void batchResultsTest() throws IOException {
+        BatchResults results = new BatchResults(2);
+        LocalDateTime time = LocalDateTime.parse("2021-09-02T10:00");
+        for (int i=0; i < 50; i++) {
+            if (i % 10 == 3) {
+                results.addError("Error " + (i % 4));
+            } else {
+                results.add(Status.values()[i % 3], (i % 4 == 0) ? null : "comment " + (i % 4),
+                            time.plusMinutes(i), (i % 5 == 0) ? null : time.minusDays(i));
+            }
+        }
+        assertEquals(50, results.size());
+        assertEquals(5, results.getStringCount());
+        File file = File.createTempFile("batch", ".bin");
+        try {
+            results.write(file.toPath());
+            BatchResults read = BatchResults.read(file.toPath());
+            assertEquals(results.size(), read.size());
+            for (int i=0; i < results.size(); i++) {
+                assertEquals(results.getStatus(i), read.getStatus(i));
+                assertEquals(results.getComment(i), read.getComment(i));
+                assertEquals(results.getError(i), read.getError(i));
+                assertEquals(results.getNextEvent(i), read.getNextEvent(i));
+                assertEquals(results.getLastEvent(i), read.getLastEvent(i));
+            }
+            assertEquals(Status.CLOSED, read.getStatus(1));
+            assertNull(read.getStatus(3));
+            assertEquals("Error 3", read.getError(3));
+            assertEquals(time.plusMinutes(1), read.getNextEvent(1));
+            assertNull(read.getLastEvent(5));
+            read.add(Status.OPEN, "comment 1", null, null);
+            assertEquals(51, read.size());
+            assertEquals("comment 1", read.getComment(50));
+            assertEquals(5, read.getStringCount());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * A test for compiled schedules written to a file and read back
+     */
+    @Test
+    public void compiledSchedulesTest()
+            throws IOException, OpeningHoursParseException, OpeningHoursEvaluationException {
+        String[] tags = { "Mo-Fr 08:00-18:00; Sa 09:00-13:00 \"by appointment\"",
+                          "Mo-Fr 08:00-18:00; We off",
+                          "Mo-Su 22:00-02:00",
+                          "Apr-Oct Mo-Fr 10:00-18:00" };
+        Geolocation geolocation = new Geolocation(52.5, 13.4, "DE", ZoneId.of("Europe/Berlin"));
+        CompiledSchedules.Writer writer = CompiledSchedules.writer();
+        List<CompiledOpeningHours> compiled = new ArrayList<>();
+        for (String tag : tags) {
+            compiled.add(CompiledOpeningHours.builder().setOpeningHoursTag(tag).setGeolocation(geolocation).build());
+            assertEquals(compiled.size() - 1, writer.add(compiled.get(compiled.size() - 1)));
+        }
+        // identical days of the 3 weekly tags are stored once
+        assertTrue(writer.getTemplateCount() <= 6);
+        File file = File.createTempFile("schedules", ".bin");
+        try {
+            writer.write(file.toPath());
+            CompiledSchedules read = CompiledSchedules.read(file.toPath());
+            assertEquals(tags.length, read.size());
+            assertTrue(read.isWeekly(0));
+            assertTrue(!read.isWeekly(3));
+            assertEquals("DE", read.getGeolocation(0).getCountry());
+            assertEquals(ZoneId.of("Europe/Berlin"), read.getGeolocation(0).getTimeZone());
+            for (int i=0; i < tags.length; i++) {
+                CompiledOpeningHours restored = read.get(i);
+                assertEquals(compiled.get(i).isWeekly(), restored.isWeekly());
+                for (LocalDateTime time = LocalDateTime.parse("2021-09-01T00:00");
+                        time.isBefore(LocalDateTime.parse("2021-09-08T00:00")); time = time.plusMinutes(97)) {
+                    assertEquals(compiled.get(i).evaluate(time).toString(), restored.evaluate(time).toString());
+                    assertEquals(compiled.get(i).getNextEvent(time).toString(),
+                                 restored.getNextEvent(time).toString());
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * A test for the store answering status and next change of POIs from a
+     * mapped file of compiled schedules
+     */
+    @Test
+    public void scheduleStoreTest()
+            throws IOException, OpeningHoursParseException, OpeningHoursEvaluationException {
+        String[] tags = { "Mo-Fr 08:00-12:00,13:00-18:00; Sa 09:00-13:00 unknown",
+                          "Mo-Su 22:00-02:00",
+                          "24/7",
+                          "Apr-Oct Mo-Fr 10:00-18:00" };
+        CompiledSchedules.Writer writer = CompiledSchedules.writer();
+        List<CompiledOpeningHours> compiled = new ArrayList<>();
+        for (String tag : tags) {
+            compiled.add(CompiledOpeningHours.builder().setOpeningHoursTag(tag).build());
+            writer.add(compiled.get(compiled.size() - 1));
+        }
+        File file = File.createTempFile("store", ".bin");
+        try {
+            writer.write(file.toPath());
+            ScheduleStore store = ScheduleStore.open(file.toPath());
+            assertEquals(tags.length, store.size());
+            assertTrue(store.isWeekly(0));
+            assertTrue(!store.isWeekly(3));
+            for (int poi=0; poi < tags.length; poi++) {
+                for (LocalDateTime time = LocalDateTime.parse("2021-10-25T00:00");
+                        time.isBefore(LocalDateTime.parse("2021-11-02T00:00")); time = time.plusMinutes(53)) {
+                    long epochMinute = CompiledOpeningHours.toEpochMinute(time);
+                    assertEquals(time.toString(), compiled.get(poi).checkStatus(time), store.getStatus(poi, epochMinute));
+                    Result next = compiled.get(poi).getNextEvent(time);
+                    long expected = (next.isAlways()) ? ScheduleStore.NO_TIME
+                                                      : CompiledOpeningHours.toEpochMinute(next.getNextEventTime());
+                    assertEquals(time.toString(), expected, store.getNextChange(poi, epochMinute));
+                }
+            }
+            assertEquals(1, store.getRestoredCache().size());
+            try {
+                store.getStatus(tags.length, 0);
+                fail("Expected an IndexOutOfBoundsException");
+            } catch (IndexOutOfBoundsException e) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * A test for the timeline of a range of time
+     */
+    @Test
+    public void timelineTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator("Mo-Fr 08:00-12:00,13:00-17:30; Sa 22:00-02:00 open \"late\"", false);
+        LocalDateTime from = LocalDateTime.parse("2021-07-02T10:00");
+        LocalDateTime to = LocalDateTime.parse("2021-07-06T09:00");
+        List<TimelineSegment> timeline = evaluator.getTimeline(from, to);
+        String[] expected = {
+            "2021-07-02T10:00/2021-07-02T12:00 opening",
+            "2021-07-02T12:00/2021-07-02T13:00 closed",
+            "2021-07-02T13:00/2021-07-02T17:30 opening",
+            "2021-07-02T17:30/2021-07-03T22:00 closed",
+            "2021-07-03T22:00/2021-07-04T02:00 opening \"late\"",
+            "2021-07-04T02:00/2021-07-05T08:00 closed",
+            "2021-07-05T08:00/2021-07-05T12:00 opening",
+            "2021-07-05T12:00/2021-07-05T13:00 closed",
+            "2021-07-05T13:00/2021-07-05T17:30 opening",
+            "2021-07-05T17:30/2021-07-06T08:00 closed",
+            "2021-07-06T08:00/2021-07-06T09:00 opening"
+        };
+        assertEquals(expected.length, timeline.size());
+        for (int i=0; i < expected.length; i++) {
+            assertEquals(expected[i], timeline.get(i).toString());
+        }
+        for (TimelineSegment segment : timeline) {
+            assertEquals(segment.getStatus(), evaluator.checkStatus(segment.getStart()));
+        }
+        assertTrue(evaluator.getTimeline(to, from).isEmpty());
+    }
+
+    /**
+     * A test for the cache of built days, its eviction and expiry
+     */
+    @Test
+    public void dayCacheTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        // a date selector, so that days are not taken from a weekly schedule
+        OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator("Jan-Dec Mo-Fr 10:00-20:00", false);
+        evaluator.setCacheOptions(2, 0, TimeUnit.MILLISECONDS);
+        LruCache<LocalDate, DaySchedule> cache = evaluator.getCompiledOpeningHours().getDayCache();
+        assertEquals(Status.OPEN, evaluator.checkStatus("2021-07-01T12:00"));
+        assertEquals(Status.CLOSED, evaluator.checkStatus("2021-07-01T21:00"));
+        assertEquals(Status.CLOSED, evaluator.checkStatus("2021-07-03T12:00"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(Status.OPEN, evaluator.checkStatus("2021-07-02T12:00"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        long[] now = { 0 };
+        LruCache<String, String> expiring = new LruCache<>(10, 100, () -> now[0]);
+        expiring.put("a", "b");
+        now[0] = 99;
+        assertEquals("b", expiring.get("a"));
+        now[0] = 100;
+        assertNull(expiring.get("a"));
+        assertEquals(0.5, expiring.getHitRate(), 0);
+    }
+
+    /**
+     * A test for tags only depending on the weekday, whose week is built once
+     * when compiling
+     */
+    @Test
+    public void weeklyScheduleTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        CompiledOpeningHours weekly = CompiledOpeningHours.builder()
+                                        .setOpeningHoursTag("Mo-Fr 08:00-18:00; Sa 09:00-13:00; Su 22:00-02:00").build();
+        assertTrue(weekly.isWeekly());
+        LocalDateTime time = LocalDateTime.parse("2021-07-05T01:00");
+        assertEquals(Status.OPEN, weekly.checkStatus(time));
+        assertEquals(LocalDateTime.parse("2021-07-05T02:00"), weekly.getNextEvent(time).getNextEventTime());
+        assertEquals(LocalDateTime.parse("2021-07-04T22:00"), weekly.getLastEvent(time).getLastEventTime());
+        time = LocalDateTime.parse("2021-07-10T15:00");
+        assertEquals(Status.CLOSED, weekly.checkStatus(time));
+        assertEquals(LocalDateTime.parse("2021-07-11T22:00"), weekly.getNextEvent(time).getNextEventTime());
+        assertEquals(Status.CLOSED, weekly.checkStatusFast(CompiledOpeningHours.toEpochMinute(time)));
+        assertEquals(weekly.getWeekSchedule(LocalDate.parse("1990-01-01")),
+                     weekly.getWeekSchedule(LocalDate.parse("2050-01-01")));
+        assertEquals(0, weekly.getDayCache().getMissCount());
+        assertEquals(0, weekly.getWeekCache().getMissCount());
+
+        CompiledOpeningHours always = CompiledOpeningHours.builder().setOpeningHoursTag("Mo-Su 00:00-24:00").build();
+        assertTrue(always.getNextEvent(time).isAlways());
+        assertTrue(always.getLastEvent(time).isAlways());
+
+        String[] notWeekly = { "Jan-Mar Mo 10:00-12:00", "2021 Mo 10:00-12:00", "week 1-10 Mo 10:00-12:00",
+                               "Mo 10:00-12:00; PH off", "Mo sunrise-sunset", "Mo[1] 10:00-12:00" };
+        for (String tag : notWeekly) {
+            assertTrue(tag, !CompiledOpeningHours.builder().setOpeningHoursTag(tag).build().isWeekly());
+        }
+    }
+
+    /**
+     * A test for tags depending on the date, whose built weeks are kept as
+     * days of whole years, shared by years of the same kind
+     */
+    @Test
+    public void yearTableTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        CompiledOpeningHours seasonal = CompiledOpeningHours.builder()
+                                            .setOpeningHoursTag("Apr-Oct Mo-Fr 10:00-18:00").build();
+        YearTable table = seasonal.getYearTable();
+        assertTrue(table.isPeriodic());
+        LocalDateTime time = LocalDateTime.parse("2021-11-02T12:00");
+        assertEquals(LocalDateTime.parse("2022-04-01T10:00"), seasonal.getNextEvent(time).getNextEventTime());
+        long builtWeeks = table.getBuiltWeekCount();
+        // 2049 and 2050 are of the same kind as 2021 and 2022
+        time = LocalDateTime.parse("2049-11-02T12:00");
+        assertEquals(LocalDateTime.parse("2050-04-01T10:00"), seasonal.getNextEvent(time).getNextEventTime());
+        assertEquals(builtWeeks, table.getBuiltWeekCount());
+
+        List<TimelineSegment> timeline = seasonal.getTimeline(LocalDateTime.parse("2021-01-01T00:00"),
+                                                              LocalDateTime.parse("2023-01-01T00:00"));
+        int openDays = 0;
+        for (LocalDate date = LocalDate.parse("2021-01-01"); date.getYear() < 2023; date = date.plusDays(1)) {
+            if (date.getMonthValue() >= 4 && date.getMonthValue() <= 10 && date.getDayOfWeek().getValue() <= 5) {
+                openDays++;
+            }
+        }
+        assertEquals(2 * openDays + 1, timeline.size());
+        // closed days and open weekdays
+        assertEquals(2, table.getTemplateCount());
+        assertTrue(seasonal.getWeekSchedule(LocalDate.parse("2021-07-05")).get(0)
+                    == seasonal.getWeekSchedule(LocalDate.parse("2022-05-02")).get(1));
+        assertEquals(0, seasonal.getWeekCache().getMissCount());
+
+        assertTrue(!CompiledOpeningHours.builder().setOpeningHoursTag("easter off; Mo-Fr 10:00-18:00").build()
+                        .getYearTable().isPeriodic());
+
+        // a year within a date: 2019 and 2047 are of the same kind as 2030,
+        // but must not share its days
+        CompiledOpeningHours dated = CompiledOpeningHours.builder()
+                                        .setOpeningHoursTag("2030 Jan 01-2030 Feb 28 10:00-12:00").build();
+        assertTrue(!dated.getYearTable().isPeriodic());
+        assertEquals(LocalDateTime.parse("2030-01-01T10:00"),
+                     dated.getNextEvent(LocalDateTime.parse("2029-12-01T12:00")).getNextEventTime());
+        assertEquals(Status.OPEN, dated.checkStatus(LocalDateTime.parse("2030-01-10T11:00")));
+        assertEquals(Status.CLOSED, dated.checkStatus(LocalDateTime.parse("2019-01-10T11:00")));
+        assertEquals(Status.CLOSED, dated.checkStatus(LocalDateTime.parse("2047-01-10T11:00")));
+        assertNull(CompiledOpeningHours.builder().setOpeningHoursTag("Apr-Oct sunrise-sunset").build().getYearTable());
+        assertNull(CompiledOpeningHours.builder().setOpeningHoursTag("Apr-Oct Mo-Fr 10:00-18:00")
+                        .setCacheOptions(0, 0, TimeUnit.MILLISECONDS).build().getYearTable());
+
+        // US weeks start on Sunday, so a day built within its Monday to
+        // Sunday week may have another week number than on its own
+        Geolocation us = new Geolocation(43.1566, -77.6088, "US");
+        CompiledOpeningHours usWeek = CompiledOpeningHours.builder().setOpeningHoursTag("week 1")
+                                        .setGeolocation(us).build();
+        assertNull(usWeek.getYearTable());
+        LocalDateTime sunday = LocalDateTime.parse("2021-01-03T12:00");
+        Result expected = new OpeningHoursEvaluator("week 1", false, us).evaluate(sunday);
+        usWeek.getNextEvent(LocalDateTime.parse("2020-12-28T12:00"));
+        assertEquals(expected.toString(), usWeek.evaluate(sunday).toString());
+        assertNotNull(CompiledOpeningHours.builder().setOpeningHoursTag("week 1").build().getYearTable());
+    }
+
+    /**
+     * A test for the plans of Rules, which skip the selector stages a Rule
+     * doesn't use
+     */
+    @Test
+    public void rulePlanTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        CompiledOpeningHours compiled = CompiledOpeningHours.builder()
+                                            .setOpeningHoursTag("10:00-18:00; 2021+ Mo 08:00-12:00; "
+                                                                + "week 1-10 Jan-Mar Tu off; Dec 24+ We 09:00-10:00")
+                                            .build();
+        List<RulePlan> plans = RulePlan.of(compiled.getCompiledRules());
+        assertEquals("weekdays", plans.get(0).toString());
+        assertEquals(0, plans.get(0).getStages());
+        assertEquals(1, plans.get(0).getWeekdays().size());
+        assertNull(plans.get(0).getOpenEndRule());
+        assertEquals("years+weekdays", plans.get(1).toString());
+        assertEquals(DateManager.DEFAULT_OPEN_END_COMMENT, plans.get(1).getOpenEndRule().getModifier().getComment());
+        assertEquals("weeks+dates+weekdays", plans.get(2).toString());
+        assertNull(plans.get(2).getOpenEndRule());
+        assertEquals("dates+weekdays", plans.get(3).toString());
+        assertNotNull(plans.get(3).getOpenEndRule());
+
+        assertEquals(Status.UNKNOWN, compiled.checkStatus(LocalDateTime.parse("2021-02-01T11:00")));
+        assertEquals(Status.OPEN, compiled.checkStatus(LocalDateTime.parse("2021-02-04T11:00")));
+        assertEquals(Status.CLOSED, compiled.checkStatus(LocalDateTime.parse("2021-03-02T11:00")));
+        assertEquals(Status.OPEN, compiled.checkStatus(LocalDateTime.parse("2021-03-16T11:00")));
+        Result result = compiled.evaluate(LocalDateTime.parse("2021-12-29T09:30"));
+        assertEquals(Status.UNKNOWN, result.getStatus());
+        assertEquals(DateManager.DEFAULT_OPEN_END_COMMENT, result.getComment());
+    }
+
+    /**
+     * A test for sharing compiled opening hours of the same tag
+     */
+    @Test
+    public void evaluatorFactoryTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        EvaluatorFactory factory = new EvaluatorFactory(2);
+        CompiledOpeningHours c1 = factory.get("Mo-Fr 09:00-18:00");
+        assertTrue(c1 == factory.get("Mo-Fr 09:00-18:00", false, new Geolocation()));
+        assertEquals(Status.OPEN, c1.checkStatus(LocalDateTime.parse("2021-07-01T12:00")));
+
+        Geolocation geolocation = new Geolocation();
+        geolocation.setSubRegion("NY");
+        assertTrue(c1 != factory.get("Mo-Fr 09:00-18:00", false, geolocation));
+        assertTrue(c1 != factory.get("Mo-Fr 09:00-18:00", true, new Geolocation()));
+        assertEquals(1, factory.getCache().getHitCount());
+        assertEquals(3, factory.getCache().getMissCount());
+        assertEquals(1, factory.getCache().getEvictionCount());
+
+        // coordinates only matter for variable times
+        factory = new EvaluatorFactory(10);
+        Geolocation chicago = new Geolocation(41.8781, -87.6298, "US", ZoneId.of("America/Chicago"));
+        Geolocation newYork = new Geolocation(40.7128, -74.0060, "US", ZoneId.of("America/New_York"));
+        assertTrue(factory.get("Mo-Fr 09:00-18:00", false, chicago)
+                    == factory.get("Mo-Fr 09:00-18:00", false, newYork));
+        CompiledOpeningHours sun = factory.get("sunrise-sunset", false, chicago);
+        assertTrue(sun == factory.get("sunrise-sunset", false, new Geolocation(chicago)));
+        assertTrue(sun != factory.get("sunrise-sunset", false, newYork));
+        assertEquals(ZoneId.of("America/New_York"),
+                     factory.get("sunrise-sunset", false, newYork).getGeolocation().getTimeZone());
     }
 
     /**
@@ -159,6 +824,189 @@ public class UnitTest {
         assertEquals(Status.OPEN, e7.checkStatus("2021-09-02T14:00"));
     }
 
+    /**
+     * A test for precomputed holiday dates, which should give the same
+     * results as the holiday data
+     */
+    @Test
+    public void holidayTableTest() throws IOException, OpeningHoursParseException, OpeningHoursEvaluationException {
+        String tag = "Mo-Fr 08:00-17:00; PH off; SH 08:00-12:00";
+        Geolocation[] geolocations = { new Geolocation(),
+                                       new Geolocation(40.7128, -74.0060, "US", "NY"),
+                                       new Geolocation(42.7339, 25.4858, "BG", ZoneId.of("Europe/Sofia")) };
+        LocalDateTime start = LocalDateTime.parse("2021-01-01T10:00");
+        List<String> expected = new ArrayList<>();
+        for (Geolocation geolocation : geolocations) {
+            OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator(tag, false, geolocation);
+            for (LocalDateTime time = start; time.getYear() < 2023; time = time.plusDays(1)) {
+                expected.add(evaluator.evaluate(time).toString());
+            }
+        }
+        File file = File.createTempFile("holidays", ".bin");
+        HolidayTable previous = HolidayManager.getHolidayTable();
+        try {
+            assertTrue(file.delete());
+            HolidayTable built = HolidayTable.loadOrBuild(file.toPath(), 2021, 2021);
+            assertTrue(file.exists());
+            HolidayTable read = HolidayTable.read(file.toPath());
+            assertTrue(read.covers(2021));
+            assertTrue(!read.covers(2022));
+            for (HolidayTable table : new HolidayTable[] { built, read }) {
+                HolidayManager.setHolidayTable(table);
+                List<String> actual = new ArrayList<>();
+                for (Geolocation geolocation : geolocations) {
+                    // 2022 is out of the table, and looked up in the holiday data
+                    OpeningHoursEvaluator evaluator = new OpeningHoursEvaluator(tag, false, geolocation);
+                    for (LocalDateTime time = start; time.getYear() < 2023; time = time.plusDays(1)) {
+                        actual.add(evaluator.evaluate(time).toString());
+                    }
+                }
+                assertEquals(expected, actual);
+            }
+        } finally {
+            HolidayManager.setHolidayTable(previous);
+            file.delete();
+        }
+    }
+
+    /**
+     * A test for precomputed holiday dates built while only some countries
+     * are kept, which should not be used for the other countries
+     */
+    @Test
+    public void holidayTableCountriesTest() throws IOException, OpeningHoursParseException,
+                                                   OpeningHoursEvaluationException {
+        File file = File.createTempFile("holidays", ".bin");
+        HolidayTable previous = HolidayManager.getHolidayTable();
+        try {
+            assertTrue(file.delete());
+            HolidayManager.preload(Arrays.asList("VN"));
+            HolidayTable partial = HolidayTable.loadOrBuild(file.toPath(), 2021, 2021);
+            assertTrue(partial.containsCountry("VN"));
+            assertTrue(!partial.containsCountry("EE"));
+            assertEquals(partial.getCountries(), HolidayTable.read(file.toPath()).getCountries());
+            HolidayManager.setHolidayTable(partial);
+            OpeningHoursEvaluator vietnam = new OpeningHoursEvaluator("PH open", false);
+            assertEquals(Status.OPEN, vietnam.checkStatus("2021-04-30T00:00"));
+
+            // Estonia is not in the table, and looked up in the holiday data
+            HolidayManager.preload(null);
+            OpeningHoursEvaluator estonia = new OpeningHoursEvaluator("PH open", false, 58.5953, 25.0136, "EE");
+            assertEquals(Status.OPEN, estonia.checkStatus("2021-02-24T00:00"));
+
+            // the cache file of some countries is built again for every country
+            HolidayTable full = HolidayTable.loadOrBuild(file.toPath(), 2021, 2021);
+            assertNull(full.getCountries());
+            assertTrue(full.containsCountry("EE"));
+            HolidayManager.setHolidayTable(full);
+            estonia = new OpeningHoursEvaluator("PH open", false, 58.5953, 25.0136, "EE");
+            assertEquals(Status.OPEN, estonia.checkStatus("2021-02-24T00:00"));
+        } finally {
+            HolidayManager.preload(null);
+            HolidayManager.setHolidayTable(previous);
+            file.delete();
+        }
+    }
+
+    /**
+     * A test for the index of holidays by year, against a scan of every
+     * holiday of the region, including holidays of the year before or after
+     * and holidays with an offset
+     */
+    @Test
+    public void holidayIndexTest() throws OpeningHoursParseException {
+        Geolocation[] geolocations = { new Geolocation(),
+                                       new Geolocation(40.7128, -74.0060, "US", "NY"),
+                                       new Geolocation(48.1351, 11.5820, "DE", "BY") };
+        String[] holidayTags = { "PH", "PH +1 day", "PH -1 day", "SH", "SH +1 day", "SH -1 day" };
+        int found = 0;
+        for (Geolocation geolocation : geolocations) {
+            HolidayManager manager = new HolidayManager(geolocation);
+            for (String holidayTag : holidayTags) {
+                ch.poole.openinghoursparser.Holiday holidayRule = parseHoliday(holidayTag);
+                // around two New Years
+                for (LocalDate date = LocalDate.parse("2020-12-15"); date.isBefore(LocalDate.parse("2022-02-01"));
+                        date = date.plusDays(1)) {
+                    Holiday expected = scanHoliday(geolocation, date, holidayRule);
+                    Holiday actual = manager.processHoliday(date, holidayRule);
+                    String message = geolocation.getCountry() + " " + holidayTag + " " + date;
+                    assertTrue(message, (expected == null) == (actual == null));
+                    if (expected != null) {
+                        assertEquals(message, expected.getName(), actual.getName());
+                        assertEquals(message, expected.getType(), actual.getType());
+                        found++;
+                    }
+                }
+            }
+        }
+        assertTrue(found > 50);
+        // one entry per region and year, within the bound of the index
+        int indexed = HolidayManager.getHolidayIndex().size();
+        assertTrue(indexed > 0 && indexed <= HolidayManager.HOLIDAY_INDEX_SIZE);
+        // New Year's Day, looked for on New Year's Eve
+        assertNotNull(new HolidayManager(new Geolocation()).processHoliday(LocalDate.parse("2021-12-31"),
+                                                                          parseHoliday("PH -1 day")));
+    }
+
+    /** Helper for holidayIndexTest(), parse the holiday of a tag */
+    private static ch.poole.openinghoursparser.Holiday parseHoliday(String holidayTag)
+            throws OpeningHoursParseException {
+        OpeningHoursParser parser = new OpeningHoursParser(new ByteArrayInputStream(holidayTag.getBytes()));
+        return parser.rules(false).get(0).getHolidays().get(0);
+    }
+
+    /**
+     * Helper for holidayIndexTest(), find a holiday by scanning every holiday
+     * of the country, then of the sub region
+     */
+    private static Holiday scanHoliday(Geolocation geolocation, LocalDate defDate,
+                                       ch.poole.openinghoursparser.Holiday holidayRule) {
+        Country country = HolidayManager.getCountry(geolocation.getCountry());
+        LocalDate offsetDate = DateManager.getOffsetDate(defDate, holidayRule.getOffset() * -1);
+        Holiday holiday = scanRegion(country, offsetDate, holidayRule.getType());
+        if (holiday == null && geolocation.getSubRegion() != null) {
+            Country subRegion = HolidayManager.getSubRegionFromCountry(country, geolocation.getSubRegion());
+            if (subRegion != null) {
+                holiday = scanRegion(subRegion, offsetDate, holidayRule.getType());
+            }
+        }
+        return holiday;
+    }
+
+    /** Helper for scanHoliday(), scan the holidays of a region */
+    private static Holiday scanRegion(Country region, LocalDate offsetDate,
+                                      ch.poole.openinghoursparser.Holiday.Type type) {
+        for (Holiday h : region.getDays()) {
+            for (int year = offsetDate.getYear() - 1; year <= offsetDate.getYear() + 1; year++) {
+                LocalDate date = h.calculateDate(year);
+                if (date != null && date.equals(offsetDate) && HolidayManager.checkType(h, type)) {
+                    return h;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A test for keeping the holidays of only some countries
+     */
+    @Test
+    public void holidayPreloadTest() throws OpeningHoursParseException, OpeningHoursEvaluationException {
+        try {
+            HolidayManager.preload(Arrays.asList("EE", "XX"));
+            assertEquals(1, HolidayManager.getCountries().size());
+            OpeningHoursEvaluator estonia = new OpeningHoursEvaluator("PH open", false, 58.5953, 25.0136, "EE");
+            assertEquals(Status.OPEN, estonia.checkStatus("2021-02-24T00:00"));
+            // holidays of Vietnam are no longer kept
+            OpeningHoursEvaluator vietnam = new OpeningHoursEvaluator("PH open", false);
+            assertEquals(Status.CLOSED, vietnam.checkStatus("2021-04-30T00:00"));
+        } finally {
+            HolidayManager.preload(null);
+        }
+        OpeningHoursEvaluator vietnam = new OpeningHoursEvaluator("PH open", false);
+        assertEquals(Status.OPEN, vietnam.checkStatus("2021-04-30T00:00"));
+    }
+
     /**
      * A test for other country holiday test
      */